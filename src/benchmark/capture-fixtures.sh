@@ -0,0 +1,16 @@
+#!/bin/sh
+# Captures the outputs of the Android SDK tools the benchmarks parse, from a real SDK, into
+# src/benchmark/resources. Run it with ANDROID_SDK_ROOT set and at least one emulator running
+# on the default adb server, then commit the updated files.
+set -eu
+
+: "${ANDROID_SDK_ROOT:?ANDROID_SDK_ROOT must point to an Android SDK}"
+out="$(dirname "$0")/resources/io/jenkins/plugins/sample/cmd"
+bin="$ANDROID_SDK_ROOT/cmdline-tools/latest/bin"
+
+"$bin/sdkmanager" --sdk_root="$ANDROID_SDK_ROOT" --list > "$out/sdkmanager-list.txt"
+"$bin/avdmanager" list avd > "$out/avdmanager-list-avd.txt"
+"$bin/avdmanager" list target > "$out/avdmanager-list-target.txt"
+"$ANDROID_SDK_ROOT/platform-tools/adb" devices -l > "$out/adb-devices-l.txt"
+# the versions of the tools the outputs come from
+"$ANDROID_SDK_ROOT/emulator/emulator" -version > "$out/emulator-version.txt"
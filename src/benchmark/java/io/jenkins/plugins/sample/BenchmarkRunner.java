@@ -0,0 +1,30 @@
+package io.jenkins.plugins.sample;
+
+import org.junit.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of src/benchmark/java, only in the benchmark profile.
+ * <p>
+ * {@code -Dbenchmark.include=<regexp>} selects some benchmarks, the results are
+ * written to target/jmh-result.json.
+ */
+public class BenchmarkRunner {
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(System.getProperty("benchmark.include", "io\\.jenkins\\.plugins\\.sample\\..*Benchmark"))
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
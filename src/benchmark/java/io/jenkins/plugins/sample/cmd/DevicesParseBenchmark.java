@@ -0,0 +1,95 @@
+package io.jenkins.plugins.sample.cmd;
+
+import io.jenkins.plugins.sample.cmd.model.ADBDevice;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link ADBManagerCLIBuilder.DevicesParse} with the regular expression it replaces,
+ * over synthetic {@code adb devices} outputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DevicesParseBenchmark {
+
+    @Param({"1", "4", "16", "64", "256"})
+    private int devices;
+
+    // adb devices -l
+    @Param({"false", "true"})
+    private boolean longFormat;
+
+    private String[] lines;
+    private String output;
+
+    @Setup
+    public void setUp() {
+        List<String> list = new ArrayList<>();
+        list.add(ADBManagerCLIBuilder.DevicesParse.LIST_OF_DEVICES_COLUMN);
+        for (int i = 0; i < devices; i++) {
+            String line = "emulator-" + (5554 + i * 2) + (longFormat ? "          " : "\t") + (i % 8 == 7 ? "offline" : "device");
+            if (longFormat) {
+                line += " product:sdk_gphone64_x86_64 model:sdk_gphone64_x86_64 device:emu64xa transport_id:" + (i + 1);
+            }
+            list.add(line);
+        }
+        list.add("");
+        lines = list.toArray(new String[0]);
+        output = String.join("\n", list);
+    }
+
+    @Benchmark
+    public List<ADBDevice> regex() {
+        List<ADBDevice> emulatorList = new ArrayList<>();
+        for (String line : lines) {
+            if (line.contains(ADBManagerCLIBuilder.DevicesParse.LIST_OF_DEVICES_COLUMN)) {
+                continue;
+            }
+            String[] strings = parseAdbOutput(line);
+            if (strings == null || strings.length == 0) {
+                continue;
+            }
+            emulatorList.add(new ADBDevice(strings[0], strings[1]));
+        }
+        return emulatorList;
+    }
+
+    @Benchmark
+    public List<ADBDevice> parseLine() {
+        ADBManagerCLIBuilder.DevicesParse parser = new ADBManagerCLIBuilder.DevicesParse();
+        for (String line : lines) {
+            parser.parseLine(line);
+        }
+        return parser.getResult();
+    }
+
+    // payload of host:devices-l
+    @Benchmark
+    public List<ADBDevice> parseOutput() {
+        return new ADBManagerCLIBuilder.DevicesParse().parseOutput(output);
+    }
+
+    // the implementation before the hand written tokenizer
+    private static String[] parseAdbOutput(String adbOutput) {
+        String regex = "(\\S+)\\s+(\\S+)";
+        Pattern pattern = Pattern.compile(regex);
+        Matcher matcher = pattern.matcher(adbOutput);
+        if (matcher.find()) {
+            return new String[]{matcher.group(1), matcher.group(2)};
+        }
+        return null;
+    }
+}
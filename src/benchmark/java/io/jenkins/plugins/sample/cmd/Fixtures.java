@@ -0,0 +1,53 @@
+package io.jenkins.plugins.sample.cmd;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Outputs of the Android SDK tools the benchmarks run against, stored next to this class.
+ * <ul>
+ * <li>sdkmanager-list.txt: {@code sdkmanager --list} of cmdline-tools 12.0</li>
+ * <li>avdmanager-list-avd.txt: {@code avdmanager list avd}, with AVDs that could not be loaded</li>
+ * <li>avdmanager-list-target.txt: {@code avdmanager list target}</li>
+ * <li>adb-devices-l.txt: {@code adb devices -l} of platform-tools 35, as the daemon starts</li>
+ * </ul>
+ * The files checked in are written by hand in the format of these tools, not captured from a
+ * machine. {@code src/benchmark/capture-fixtures.sh} replaces them with the outputs of a real SDK,
+ * along with {@code emulator-version.txt} that records the emulator they come from.
+ */
+public final class Fixtures {
+
+    public static final String SDKMANAGER_LIST = "sdkmanager-list.txt";
+    public static final String AVDMANAGER_LIST_AVD = "avdmanager-list-avd.txt";
+    public static final String AVDMANAGER_LIST_TARGET = "avdmanager-list-target.txt";
+    public static final String ADB_DEVICES_L = "adb-devices-l.txt";
+
+    private Fixtures() {
+    }
+
+    public static String[] lines(String name) throws IOException {
+        try (InputStream input = Fixtures.class.getResourceAsStream(name)) {
+            if (input == null) {
+                throw new IOException("Fixture " + name + " not found");
+            }
+            List<String> lines = IOUtils.readLines(input, StandardCharsets.UTF_8);
+            return lines.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Feeds the lines to the parser as {@link ChristelleCLICommand} does while the command runs.
+     */
+    public static <R> R parse(ChristelleCLICommand.OutputParser<R> parser, String[] lines) throws IOException {
+        for (String line : lines) {
+            if (!parser.parseLine(line)) {
+                break;
+            }
+        }
+        return parser.getResult();
+    }
+}
@@ -0,0 +1,64 @@
+package io.jenkins.plugins.sample.cmd;
+
+import io.jenkins.plugins.sample.cmd.model.ADBDevice;
+import io.jenkins.plugins.sample.cmd.model.AVDevice;
+import io.jenkins.plugins.sample.cmd.model.SDKPackages;
+import io.jenkins.plugins.sample.cmd.model.Targets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsers of the Android SDK tools output, over the {@link Fixtures}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OutputParsersBenchmark {
+
+    private String[] sdkmanagerList;
+    private String[] avdmanagerListAvd;
+    private String[] avdmanagerListTarget;
+    private String[] adbDevices;
+
+    @Setup
+    public void setUp() throws IOException {
+        sdkmanagerList = Fixtures.lines(Fixtures.SDKMANAGER_LIST);
+        avdmanagerListAvd = Fixtures.lines(Fixtures.AVDMANAGER_LIST_AVD);
+        avdmanagerListTarget = Fixtures.lines(Fixtures.AVDMANAGER_LIST_TARGET);
+        adbDevices = Fixtures.lines(Fixtures.ADB_DEVICES_L);
+    }
+
+    @Benchmark
+    public SDKPackages listPackages() throws IOException {
+        return Fixtures.parse(new SDKManagerCLIBuilder.ListPackagesParser(), sdkmanagerList);
+    }
+
+    @Benchmark
+    public SDKPackages listInstalledPackages() throws IOException {
+        return Fixtures.parse(new SDKManagerCLIBuilder.ListPackagesParser(true), sdkmanagerList);
+    }
+
+    @Benchmark
+    public List<AVDevice> listAVD() throws IOException {
+        return Fixtures.parse(new AVDManagerCLIBuilder.ListAVDParser(), avdmanagerListAvd);
+    }
+
+    @Benchmark
+    public List<Targets> listTarget() throws IOException {
+        return Fixtures.parse(new AVDManagerCLIBuilder.ListTargetParser(), avdmanagerListTarget);
+    }
+
+    @Benchmark
+    public List<ADBDevice> devices() throws IOException {
+        return Fixtures.parse(new ADBManagerCLIBuilder.DevicesParse(), adbDevices);
+    }
+}
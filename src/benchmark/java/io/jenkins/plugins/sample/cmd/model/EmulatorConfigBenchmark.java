@@ -0,0 +1,50 @@
+package io.jenkins.plugins.sample.cmd.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Naming and validation of an emulator configuration, done for every queued build by
+ * {@code TaskDispatcher} and at the start of every build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EmulatorConfigBenchmark {
+
+    private EmulatorConfig config;
+
+    @Setup
+    public void setUp() {
+        config = create();
+    }
+
+    private static EmulatorConfig create() {
+        return EmulatorConfig.create(null, "android-34", "420", "1080x2400", "en_US", "512", false, false, true,
+                null, "google_apis/x86_64", "pixel_6", null, null, null);
+    }
+
+    @Benchmark
+    public String getAvdName() {
+        return EmulatorConfig.getAvdName(null, "android-34", "420", "1080x2400", "en_US", "google_apis/x86_64",
+                "pixel_6", null);
+    }
+
+    @Benchmark
+    public String getGeneratedAvdName() {
+        return config.getAvdName();
+    }
+
+    @Benchmark
+    public Collection<EmulatorConfig.ValidationError> validate() {
+        return config.validate();
+    }
+}
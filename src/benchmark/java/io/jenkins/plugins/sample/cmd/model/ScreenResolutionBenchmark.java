@@ -0,0 +1,28 @@
+package io.jenkins.plugins.sample.cmd.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ScreenResolution#valueOf(String)} for an alias, a preset and a custom resolution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScreenResolutionBenchmark {
+
+    @Param({"WVGA800", "1280x720", "1080x2400"})
+    private String resolution;
+
+    @Benchmark
+    public ScreenResolution valueOf() {
+        return ScreenResolution.valueOf(resolution);
+    }
+}
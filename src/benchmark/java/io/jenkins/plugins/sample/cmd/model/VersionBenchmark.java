@@ -0,0 +1,63 @@
+package io.jenkins.plugins.sample.cmd.model;
+
+import io.jenkins.plugins.sample.cmd.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Version} parsing and ordering, over the versions listed by {@code sdkmanager --list}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VersionBenchmark {
+
+    private String[] values;
+    private Version[] versions;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> list = new ArrayList<>();
+        for (String line : Fixtures.lines(Fixtures.SDKMANAGER_LIST)) {
+            // second column of the package tables
+            String[] cells = line.split("\\|");
+            if (cells.length > 1) {
+                String value = cells[1].trim();
+                if (!value.isEmpty() && Character.isDigit(value.charAt(0))) {
+                    list.add(value);
+                }
+            }
+        }
+        values = list.toArray(new String[0]);
+        versions = new Version[values.length];
+        for (int i = 0; i < values.length; i++) {
+            versions[i] = new Version(values[i]);
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(new Version(value));
+        }
+    }
+
+    @Benchmark
+    public Version[] sort() {
+        Version[] sorted = versions.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,157 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import io.jenkins.plugins.sample.cmd.ADBManagerCLIBuilder;
+import io.jenkins.plugins.sample.cmd.help.ADBClient;
+import jenkins.util.SystemProperties;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one ADB server running on each node, shared by all the emulators of the node, instead of
+ * starting it for each build and killing it at the end of the build, which disconnects the
+ * emulators of the other builds.
+ * <p>
+ * Each emulator holds a lease on the server of its node, from its start until it is killed. The
+ * server is checked before each lease and started only when it does not answer, out of reach of
+ * the process tree killer of the build. It is left running when the last lease is released,
+ * unless the {@code ADBServerManager.stopWhenIdle} system property is set.
+ * </p>
+ * The state of the servers only lives in the controller memory and is forgotten when a node
+ * connects or disconnects.
+ */
+@Extension
+public class ADBServerManager extends ComputerListener {
+    private static final Logger LOGGER = Logger.getLogger(ADBServerManager.class.getName());
+
+    private static final boolean STOP_WHEN_IDLE = SystemProperties.getBoolean(ADBServerManager.class.getName() + ".stopWhenIdle");
+
+    // node name -> server of the node
+    private final Map<String, Server> servers = new HashMap<>();
+
+    public static ADBServerManager get() {
+        return ExtensionList.lookupSingleton(ADBServerManager.class);
+    }
+
+    private static final class Server {
+        // console ports of the emulators that use the server
+        final Set<Integer> leases = new HashSet<>();
+        int port;
+    }
+
+    /**
+     * Makes sure that the ADB server of the node answers, starting it if needed, and leases it for
+     * an emulator.
+     *
+     * @param computer the node of the emulator
+     * @param consolePort the console port of the emulator that uses the server
+     * @param serverPort the port of the ADB server
+     */
+    public void acquire(@NonNull Computer computer, int consolePort, int serverPort,
+                        @NonNull Launcher launcher, @NonNull FilePath workspace, @NonNull String sdkRoot, @NonNull EnvVars env)
+            throws IOException, InterruptedException {
+        Server server;
+        synchronized (this) {
+            server = servers.computeIfAbsent(computer.getName(), k -> new Server());
+        }
+        synchronized (server) {
+            if (!isHealthy(computer.getChannel(), serverPort)) {
+                if (!server.leases.isEmpty()) {
+                    LOGGER.log(Level.WARNING, "The ADB server of {0} does not answer anymore, restarting it", computer.getName());
+                }
+                start(launcher, workspace, sdkRoot, env, serverPort);
+            }
+            server.port = serverPort;
+            server.leases.add(consolePort);
+        }
+    }
+
+    /**
+     * Gives back the lease of an emulator that has been killed, nothing is done if the emulator
+     * has no lease.
+     */
+    public void release(@NonNull Computer computer, int consolePort) {
+        Server server;
+        synchronized (this) {
+            server = servers.get(computer.getName());
+        }
+        if (server == null) {
+            return;
+        }
+        synchronized (server) {
+            if (!server.leases.remove(consolePort) || !server.leases.isEmpty() || !STOP_WHEN_IDLE) {
+                return;
+            }
+            VirtualChannel channel = computer.getChannel();
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.call(new ADBClient.KillTask(server.port));
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to stop the ADB server of " + computer.getName(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Starts the ADB server, detached from the build so that it survives it.
+     */
+    static void start(@NonNull Launcher launcher, @NonNull FilePath workspace, @NonNull String sdkRoot, @NonNull EnvVars env,
+                      int serverPort) throws IOException, InterruptedException {
+        ADBManagerCLIBuilder.withSDKRoot(sdkRoot)
+                .createExecutable(launcher, workspace)
+                .setMaxEmulators(EmulatorPortAllocator.MAX_EMULATORS)
+                .setPort(serverPort)
+                .start()
+                .withEnv(env)
+                .withEnv(EmulatorRunner.ENV_BUILD_ID, EmulatorRunner.DONT_KILL_ME)
+                .withEnv(EmulatorRunner.ENV_JENKINS_NODE_COOKIE, EmulatorRunner.DONT_KILL_ME)
+                .execute(launcher);
+    }
+
+    private static boolean isHealthy(VirtualChannel channel, int serverPort) throws InterruptedException {
+        if (channel == null) {
+            return false;
+        }
+        try {
+            channel.call(new ADBClient.VersionTask(serverPort));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void onOnline(Computer c, TaskListener listener) {
+        forget(c);
+    }
+
+    @Override
+    public void onOffline(@NonNull Computer c, @CheckForNull OfflineCause cause) {
+        forget(c);
+    }
+
+    private synchronized void forget(Computer c) {
+        servers.remove(c.getName());
+    }
+}
@@ -0,0 +1,217 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Util;
+import io.jenkins.plugins.sample.cmd.model.EmulatorConfig;
+import io.jenkins.plugins.sample.cmd.model.HardwareProperty;
+import io.jenkins.plugins.sample.cmd.model.ScreenDensity;
+import io.jenkins.plugins.sample.cmd.model.ScreenResolution;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Fingerprint of the settings of an AVD that depend on the {@link EmulatorConfig}.
+ * <p>
+ * The expected settings (system image, ABI, screen density and resolution, SD
+ * card size and custom hardware properties) are compared with the ones stored
+ * in the {@code config.ini} of the AVD, or in the {@code hardware-qemu.ini}
+ * generated by the emulator for the keys that {@code config.ini} does not
+ * define. An AVD that matches can be booted as is, without being deleted and
+ * created again, which also keeps its userdata image.
+ * <p>
+ * The keys written by {@link #apply(FilePath)} are recorded in the
+ * {@code config.ini}, an AVD that still has a key the configuration no longer
+ * sets does not match either.
+ */
+public final class AVDFingerprint {
+
+    private static final String CONFIG_INI = "config.ini";
+    private static final String HARDWARE_QEMU_INI = "hardware-qemu.ini";
+
+    private static final String KEY_SYSTEM_DIR = "image.sysdir.1";
+    private static final String KEY_ABI = "abi.type";
+    private static final String KEY_DENSITY = "hw.lcd.density";
+    private static final String KEY_WIDTH = "hw.lcd.width";
+    private static final String KEY_HEIGHT = "hw.lcd.height";
+    private static final String KEY_SDCARD_SIZE = "sdcard.size";
+    // keys written by apply, ignored by the emulator
+    private static final String KEY_MANAGED = "jenkins.managed.keys";
+
+    private final Map<String, String> expected;
+
+    /**
+     * @param config the emulator configuration
+     * @param systemComponent the SDK package of the system image, eg:
+     *        system-images;android-30;default;x86_64
+     */
+    public AVDFingerprint(@NonNull EmulatorConfig config, @NonNull String systemComponent) {
+        expected = new LinkedHashMap<>();
+        expected.put(KEY_SYSTEM_DIR, systemComponent.replace(';', '/'));
+        if (config.getTargetABI() != null) {
+            expected.put(KEY_ABI, config.getTargetABI());
+        }
+        ScreenDensity density = ScreenDensity.valueOfDensity(config.getDensity());
+        if (density != null) {
+            expected.put(KEY_DENSITY, String.valueOf(density.getDpi()));
+        }
+        ScreenResolution resolution = ScreenResolution.valueOf(config.getResolution());
+        if (resolution != null) {
+            expected.put(KEY_WIDTH, String.valueOf(resolution.getWidth()));
+            expected.put(KEY_HEIGHT, String.valueOf(resolution.getHeight()));
+        }
+        String sdCardSize = Util.fixEmptyAndTrim(config.getSdCardSize());
+        if (sdCardSize != null) {
+            expected.put(KEY_SDCARD_SIZE, sdCardSize + "M");
+        }
+        if (config.getHardwareProperties() != null) {
+            for (HardwareProperty property : config.getHardwareProperties()) {
+                if (property.getKey() != null) {
+                    expected.put(property.getKey(), Util.fixNull(property.getValue()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the expected AVD settings.
+     */
+    public String getValue() {
+        return digest(expected);
+    }
+
+    /**
+     * Checks if the AVD stored in the given folder has been created with the
+     * expected settings.
+     *
+     * @param avdPath the AVD folder, eg: ~/.android/avd/test.avd
+     * @return {@code false} if the AVD does not exist or any of the settings
+     *         differs
+     */
+    public boolean matches(@NonNull FilePath avdPath) throws IOException, InterruptedException {
+        FilePath configIni = avdPath.child(CONFIG_INI);
+        if (!configIni.exists()) {
+            return false;
+        }
+
+        Map<String, String> stored = new LinkedHashMap<>();
+        FilePath hardwareIni = avdPath.child(HARDWARE_QEMU_INI);
+        if (hardwareIni.exists()) {
+            stored.putAll(parse(hardwareIni.readToString()));
+        }
+        stored.putAll(parse(configIni.readToString()));
+
+        // a key applied earlier but no longer expected still changes the device
+        if (!getManagedKeys().equals(parseKeys(stored.get(KEY_MANAGED)))) {
+            return false;
+        }
+
+        Map<String, String> actual = new LinkedHashMap<>();
+        for (String key : expected.keySet()) {
+            String value = stored.get(key);
+            if (value != null) {
+                actual.put(key, value);
+            }
+        }
+        return getValue().equals(digest(actual));
+    }
+
+    /**
+     * Writes the expected settings in the {@code config.ini} of a newly created AVD.
+     *
+     * @param avdPath the AVD folder, eg: ~/.android/avd/test.avd
+     */
+    public void apply(@NonNull FilePath avdPath) throws IOException, InterruptedException {
+        FilePath configIni = avdPath.child(CONFIG_INI);
+        String content = configIni.exists() ? configIni.readToString() : "";
+
+        Map<String, String> pending = new LinkedHashMap<>(expected);
+        // avdmanager writes its own value, keep it when equivalent
+        pending.remove(KEY_SYSTEM_DIR);
+        pending.put(KEY_MANAGED, String.join(",", getManagedKeys()));
+        List<String> lines = new ArrayList<>();
+        for (String line : content.split("\\r?\\n")) {
+            int idx = line.indexOf('=');
+            if (idx > 0) {
+                String key = line.substring(0, idx).trim();
+                if (pending.containsKey(key)) {
+                    lines.add(key + "=" + pending.remove(key));
+                    continue;
+                }
+            }
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        for (Map.Entry<String, String> entry : pending.entrySet()) {
+            lines.add(entry.getKey() + "=" + entry.getValue());
+        }
+        configIni.write(String.join("\n", lines) + "\n", StandardCharsets.UTF_8.name());
+    }
+
+    // the keys apply writes in config.ini, sorted
+    private Set<String> getManagedKeys() {
+        Set<String> keys = new TreeSet<>(expected.keySet());
+        keys.remove(KEY_SYSTEM_DIR);
+        return keys;
+    }
+
+    private static Set<String> parseKeys(String value) {
+        Set<String> keys = new TreeSet<>();
+        if (value != null) {
+            for (String key : value.split(",")) {
+                if (!key.trim().isEmpty()) {
+                    keys.add(key.trim());
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static Map<String, String> parse(String content) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String line : content.split("\\r?\\n")) {
+            int idx = line.indexOf('=');
+            if (idx > 0) {
+                values.put(line.substring(0, idx).trim(), line.substring(idx + 1).trim());
+            }
+        }
+        return values;
+    }
+
+    private static String digest(Map<String, String> values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Map.Entry<String, String> entry : new TreeMap<>(values).entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '=');
+                digest.update(normalize(entry.getKey(), entry.getValue()).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return Util.toHexString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String normalize(String key, String value) {
+        if (KEY_SYSTEM_DIR.equals(key)) {
+            // avdmanager writes a trailing separator, backslashes on Windows
+            value = value.replace('\\', '/');
+            while (value.endsWith("/")) {
+                value = value.substring(0, value.length() - 1);
+            }
+        }
+        return value;
+    }
+}
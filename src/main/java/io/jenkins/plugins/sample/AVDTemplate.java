@@ -0,0 +1,267 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AVDs freshly created by avdmanager, kept on each node as templates keyed by their
+ * {@link AVDFingerprint}, the revision of the installed system image and the device definition, to
+ * create the next AVDs with the same settings without launching avdmanager. An update of the system
+ * image gives new templates, as it does for the {@link GoldenSnapshot}.
+ * <p>
+ * A template is cloned with {@code cp --reflink=auto} where the file system supports copy on write,
+ * so that the AVDs share their blocks with the template until the emulator writes them, and with a
+ * sparse copy otherwise. The paths and the name of the AVD written in its {@code .ini} files are
+ * rewritten for the clone, as {@code EmulatorRunner} does for the {@code .ini} next to the AVD.
+ */
+public final class AVDTemplate {
+
+    private static final String TEMPLATES = "avd-templates";
+    private static final String DEFAULT_DEVICE = "default";
+
+    private static final String KEY_AVD_ID = "AvdId";
+    private static final String KEY_DISPLAY_NAME = "avd.ini.displayname";
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final long CP_TIMEOUT_MINUTES = 10;
+
+    private final FilePath root;
+
+    private AVDTemplate(FilePath root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the template of the AVDs with the given settings on the node.
+     *
+     * @param computer the node where the AVDs are created
+     * @param fingerprint the settings of the AVD
+     * @param systemImage identifier and revision of the system image installed in the SDK,
+     *        {@code null} if unknown
+     * @param device the device definition given to avdmanager, {@code null} for its default
+     * @return {@code null} if the node is offline or the revision of the system image is unknown
+     */
+    @CheckForNull
+    public static AVDTemplate of(@CheckForNull Computer computer, @NonNull AVDFingerprint fingerprint,
+                                 @CheckForNull String systemImage, @CheckForNull String device) {
+        Node node = computer != null ? computer.getNode() : null;
+        FilePath nodeRoot = node != null ? node.getRootPath() : null;
+        if (nodeRoot == null || systemImage == null) {
+            return null;
+        }
+        String key = fingerprint.getValue() + '\n' + systemImage + '\n' + (device != null ? device : DEFAULT_DEVICE);
+        return new AVDTemplate(nodeRoot.child(TEMPLATES).child(Util.getDigestOf(key)));
+    }
+
+    /**
+     * Creates an AVD as a clone of the template.
+     *
+     * @param avdHome the folder that contains the AVDs
+     * @param avdName the name of the new AVD, an AVD with this name is replaced
+     * @return {@code false} if there is no template yet
+     */
+    public boolean cloneTo(@NonNull FilePath avdHome, @NonNull String avdName) throws IOException, InterruptedException {
+        return root.act(new CloneTask(avdHome.child(avdName + ".avd").getRemote(), avdName));
+    }
+
+    /**
+     * Makes a template of an AVD just created, before the emulator boots it. Nothing is done if
+     * the template already exists.
+     *
+     * @param avdHome the folder that contains the AVDs
+     * @param avdName the name of the AVD
+     */
+    public void store(@NonNull FilePath avdHome, @NonNull String avdName) throws IOException, InterruptedException {
+        avdHome.child(avdName + ".avd").act(new StoreTask(root.getRemote()));
+    }
+
+    private static final class CloneTask extends MasterToSlaveFileCallable<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final String avdPath;
+        private final String avdName;
+
+        CloneTask(String avdPath, String avdName) {
+            this.avdPath = avdPath;
+            this.avdName = avdName;
+        }
+
+        @Override
+        public Boolean invoke(File template, VirtualChannel channel) throws IOException, InterruptedException {
+            if (!template.isDirectory()) {
+                return false;
+            }
+            Path target = new File(avdPath).toPath();
+            Path partial = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".partial");
+            try {
+                copy(template.toPath(), partial);
+                rewrite(partial, template.getAbsolutePath(), target.toAbsolutePath().toString(), avdName);
+                deleteRecursive(target);
+                Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                deleteRecursive(partial);
+            }
+            return true;
+        }
+    }
+
+    private static final class StoreTask extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String templatePath;
+
+        StoreTask(String templatePath) {
+            this.templatePath = templatePath;
+        }
+
+        @Override
+        public Void invoke(File avd, VirtualChannel channel) throws IOException, InterruptedException {
+            Path template = new File(templatePath).toPath();
+            if (Files.isDirectory(template)) {
+                return null;
+            }
+            Files.createDirectories(template.getParent());
+            Path partial = template.resolveSibling(template.getFileName() + "." + UUID.randomUUID() + ".partial");
+            try {
+                copy(avd.toPath(), partial);
+                rewrite(partial, avd.getAbsolutePath(), template.toAbsolutePath().toString(), null);
+                // another build may have stored the same template meanwhile, both are the same
+                Files.move(partial, template, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (!Files.isDirectory(template)) {
+                    throw e;
+                }
+            } finally {
+                deleteRecursive(partial);
+            }
+            return null;
+        }
+    }
+
+    // copy on write when cp and the file system support it, sparse copy otherwise
+    static void copy(Path source, Path target) throws IOException, InterruptedException {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH);
+        if (os.contains("linux")) {
+            Process cp = new ProcessBuilder("cp", "-R", "--reflink=auto", "--sparse=always", source.toString(), target.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (cp.waitFor(CP_TIMEOUT_MINUTES, TimeUnit.MINUTES) && cp.exitValue() == 0) {
+                return;
+            }
+            cp.destroyForcibly();
+            deleteRecursive(target);
+        }
+
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                copySparse(file, target.resolve(source.relativize(file).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // blocks of zeros are skipped, the images of the AVD are mostly empty
+    private static void copySparse(Path source, Path target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             RandomAccessFile out = new RandomAccessFile(target.toFile(), "rw")) {
+            FileChannel outChannel = out.getChannel();
+            long position = 0;
+            while (true) {
+                buffer.clear();
+                int read = in.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                if (!isZero(buffer)) {
+                    while (buffer.hasRemaining()) {
+                        outChannel.write(buffer, position + buffer.position());
+                    }
+                }
+                position += read;
+            }
+            // a trailing hole has not been written
+            out.setLength(position);
+        }
+    }
+
+    private static boolean isZero(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the .ini files of the AVD refer to its folder and its name
+    private static void rewrite(Path avd, String fromPath, String toPath, @CheckForNull String avdName) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(avd, "*.ini")) {
+            for (Path ini : files) {
+                List<String> lines = new ArrayList<>();
+                for (String line : Files.readAllLines(ini, StandardCharsets.UTF_8)) {
+                    line = line.replace(fromPath, toPath);
+                    if (avdName != null && (line.startsWith(KEY_AVD_ID + "=") || line.startsWith(KEY_DISPLAY_NAME + "="))) {
+                        line = line.substring(0, line.indexOf('=') + 1) + avdName;
+                    }
+                    lines.add(line);
+                }
+                Files.write(ini, lines, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private static void deleteRecursive(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -4,6 +4,7 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.*;
 import hudson.matrix.Combination;
+import hudson.matrix.MatrixRun;
 import hudson.model.*;
 import hudson.model.listeners.RunListener;
 import hudson.tasks.BuildWrapperDescriptor;
@@ -11,11 +12,13 @@ import hudson.util.ArgumentListBuilder;
 import hudson.util.FormValidation;
 import io.jenkins.plugins.sample.cmd.ADBManagerCLIBuilder;
 import io.jenkins.plugins.sample.cmd.ChristelleCLICommand;
+import io.jenkins.plugins.sample.cmd.help.EmulatorLogSink;
 import io.jenkins.plugins.sample.cmd.help.Platform;
 import io.jenkins.plugins.sample.cmd.help.ToolsCommand;
 import io.jenkins.plugins.sample.cmd.help.Utils;
 import io.jenkins.plugins.sample.cmd.model.ADBDevice;
 import io.jenkins.plugins.sample.cmd.model.AndroidEmulatorShareDataAction;
+import io.jenkins.plugins.sample.cmd.model.EmulatorDemand;
 import io.jenkins.plugins.sample.cmd.model.EmulatorConfig;
 import io.jenkins.plugins.sample.cmd.model.HardwareProperty;
 import jenkins.model.Jenkins;
@@ -36,9 +39,12 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
+    private static final Logger LOGGER = Logger.getLogger(AndroidEmulatorBuildWrapper.class.getName());
 
     private final String buildTools;
     private final String androidOSVersion;
@@ -52,6 +58,7 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
     private String targetABI;
     private int adbTimeout;
     private boolean enableOptions;
+    private boolean useSnapshots;
 
     private List<HardwareProperty> hardwareProperties = new ArrayList<>();
     @Exported
@@ -97,6 +104,9 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
     public String getTargetABI() {
         return targetABI;
     }
+    public boolean isUseSnapshots() {
+        return useSnapshots;
+    }
     public boolean isConfigToolsEnable() {
         return configToolsEnable;
     }
@@ -183,6 +193,11 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
         this.enableOptions = enableOptions;
     }
 
+    @DataBoundSetter
+    public void setUseSnapshots(boolean useSnapshots) {
+        this.useSnapshots = useSnapshots;
+    }
+
     @DataBoundConstructor
     public AndroidEmulatorBuildWrapper(@CheckForNull String buildTools, String androidOSVersion, String density, String resolution) {
         this.buildTools = buildTools;
@@ -198,29 +213,30 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
             descriptor = Jenkins.get().getDescriptorByType(DescriptorImpl.class);
         }
 
-        System.out.println("initialEnvironment" + initialEnvironment.toString());
-        System.out.println("androidHome:" + SDKRoot);
+        LOGGER.fine(() -> "androidHome: " + SDKRoot);
         initialEnvironment.put(Constants.ENV_VAR_ANDROID_SDK_ROOT, SDKRoot);
         buildEnvVars(workspace, initialEnvironment);
         try {
 
             final EnvVars env = initialEnvironment.overrideAll(context.getEnv());
-            config = new EmulatorConfig();
-            config.setAvdAndroidAPI(Util.replaceMacro(androidOSVersion, env));
-            config.setDensity(Util.replaceMacro(density, env));
-            config.setResolution(Util.replaceMacro(resolution, env));
-            config.setEmulatorName(Util.replaceMacro(emulatorName, env));
-            config.setDeviceLocale(Util.replaceMacro(deviceLocale, env));
-            config.setDeviceDefinition(Util.replaceMacro(deviceDefinition, env));
-            config.setSdCardSize(Util.replaceMacro(SDCardSize, env));
-            config.setTargetABI(Util.replaceMacro(targetABI, env));
-            config.setHardwareProperties(hardwareProperties.stream() //
-                    .map(p -> new HardwareProperty(Util.replaceMacro(p.getKey(), env), Util.replaceMacro(p.getValue(), env))) //
-                    .collect(Collectors.toList()));
-            config.setEmulatorConnectToAdbTimeout(adbTimeout * 1000);
-            config.setEmulatorReportConsolePort(55000);
-
-            build.addAction(new AndroidEmulatorShareDataAction(config.getEmulatorConsolePort()));
+            config = createConfig(env);
+            // ports not used by the other emulators of the node
+            Computer computer = workspace.toComputer();
+            if (computer != null) {
+                EmulatorPortAllocator.Ports ports = EmulatorPortAllocator.get().allocate(computer, build);
+                config.setEmulatorConsolePort(ports.getConsolePort());
+                config.setEmulatorADBConnectPort(ports.getAdbConnectPort());
+                config.setEmulatorReportConsolePort(ports.getReportConsolePort());
+            } else {
+                config.setEmulatorReportConsolePort(55000);
+            }
+
+            AndroidEmulatorShareDataAction shareDataAction = new AndroidEmulatorShareDataAction(config.getEmulatorConsolePort());
+            if (computer != null) {
+                // the emulators are shut down on this node once the build is completed
+                shareDataAction.setNodeName(computer.getName());
+            }
+            build.addAction(shareDataAction);
 
             // validate input
             Collection<EmulatorConfig.ValidationError> errors = config.validate();
@@ -229,7 +245,39 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
             }
 
             EmulatorRunner emulatorRunner = new EmulatorRunner(config);
-            emulatorRunner.run(workspace, listener, env);
+            EmulatorLogSink emulatorLog = new EmulatorLogSink();
+            shareDataAction.setEmulatorLog(emulatorLog);
+            emulatorRunner.setEmulatorLog(emulatorLog);
+            if (descriptor.shouldReuseEmulators && !descriptor.shouldKeepInWorkspace) {
+                emulatorRunner.setConfigHash(getConfigHash(workspace, build));
+            }
+            EmulatorPool.PooledEmulator pooled;
+            boolean booted = false;
+            try {
+                pooled = emulatorRunner.run(workspace, listener, env);
+                booted = true;
+                if (pooled == null) {
+                    listener.getLogger().println("The emulator output is no longer shown, it is archived if the build fails");
+                }
+            } finally {
+                // past the boot the output of the emulator is only kept for the archive
+                try {
+                    emulatorLog.detach();
+                } catch (IOException e) {
+                    listener.getLogger().println("Unable to stop showing the emulator output: " + e.getMessage());
+                }
+                // the phases of a failed boot tell where it got stuck
+                EmulatorBootMetrics metrics = emulatorRunner.getBootMetrics();
+                build.addAction(metrics);
+                EmulatorBootTrendAction.Factory.get().add(build.getParent());
+                EmulatorBootMetricsEndpoint.get().record(metrics, booted);
+            }
+            shareDataAction.setEmulatorConsolePort(config.getEmulatorConsolePort());
+            if (pooled != null) {
+                shareDataAction.setConfigHash(pooled.getConfigHash());
+                // the pool keeps the ports of its emulators
+                EmulatorPortAllocator.get().free(build);
+            }
 
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -237,6 +285,25 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
         //killServiceAfterBuild(context, initialEnvironment);
     }
 
+    // the emulator configuration with the variables of the given environment expanded, ports are left unset
+    EmulatorConfig createConfig(EnvVars env) {
+        EmulatorConfig config = new EmulatorConfig();
+        config.setAvdAndroidAPI(Util.replaceMacro(androidOSVersion, env));
+        config.setDensity(Util.replaceMacro(density, env));
+        config.setResolution(Util.replaceMacro(resolution, env));
+        config.setEmulatorName(Util.replaceMacro(emulatorName, env));
+        config.setDeviceLocale(Util.replaceMacro(deviceLocale, env));
+        config.setDeviceDefinition(Util.replaceMacro(deviceDefinition, env));
+        config.setSdCardSize(Util.replaceMacro(SDCardSize, env));
+        config.setTargetABI(Util.replaceMacro(targetABI, env));
+        config.setHardwareProperties(hardwareProperties.stream() //
+                .map(p -> new HardwareProperty(Util.replaceMacro(p.getKey(), env), Util.replaceMacro(p.getValue(), env))) //
+                .collect(Collectors.toList()));
+        config.setEmulatorConnectToAdbTimeout(adbTimeout * 1000);
+        config.setUseSnapshots(useSnapshots);
+        return config;
+    }
+
     private void killServiceAfterBuild(Context context, EnvVars envVars) {
         String sdkRoot = envVars.get(Constants.ANDROID_SDK_ROOT);
         Disposer disposer = new Disposer() {
@@ -262,6 +329,24 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
         return getConfigHash(node, null);
     }
 
+    // the hash of the emulator that this build is going to run, null if can not be fully resolved
+    private String getConfigHash(FilePath workspace, Run<?, ?> build) {
+        Computer computer = workspace.toComputer();
+        Node node = computer != null ? computer.getNode() : null;
+        if (node == null) {
+            return null;
+        }
+        Combination combination = null;
+        if (build instanceof MatrixRun) {
+            combination = ((MatrixRun) build).getParent().getCombination();
+        }
+        String hash = getConfigHash(node, combination);
+        if (hash == null || hash.contains("$")) {
+            return null;
+        }
+        return hash;
+    }
+
     public String getConfigHash(Node node, Combination combination) {
         EnvVars envVars;
         try {
@@ -269,9 +354,9 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
             if (computer == null) {
                 throw new BuildNodeUnavailableException();
             }
-            envVars = computer.getEnvironment();
+            envVars = ConfigHashIndex.get().getEnvironment(computer);
         } catch (Exception e) {
-            e.printStackTrace();
+            LOGGER.log(Level.WARNING, "Unable to compute the configuration hash on " + node.getNodeName(), e);
             return null;
         }
 
@@ -289,6 +374,29 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
                 deviceLocale, targetAbi, deviceDefinition, avdNameSuffix);
     }
 
+    // resources used by the emulator of this build on the given node
+    public EmulatorDemand getEmulatorDemand(Node node, Combination combination) {
+        EnvVars envVars = new EnvVars();
+        try {
+            final Computer computer = node.toComputer();
+            if (computer != null) {
+                envVars = ConfigHashIndex.get().getEnvironment(computer);
+            }
+        } catch (IOException e) {
+            // unresolved values fall back to the defaults
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<HardwareProperty> properties = new ArrayList<>();
+        if (hardwareProperties != null) {
+            for (HardwareProperty property : hardwareProperties) {
+                properties.add(new HardwareProperty(property.getKey(), Utils.expandVariables(envVars, combination, property.getValue())));
+            }
+        }
+        return EmulatorDemand.of(properties);
+    }
+
     private static boolean checkEmulatorBooted(String emulatorName) throws IOException {
         Process process = Runtime.getRuntime().exec("adb -s " + emulatorName + " shell getprop sys.boot_completed");
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
@@ -321,6 +429,7 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
         String androidHome;
         boolean shouldInstallSdk;
         boolean shouldKeepInWorkspace;
+        boolean shouldReuseEmulators;
 
         public DescriptorImpl() {
             super(AndroidEmulatorBuildWrapper.class);
@@ -342,6 +451,7 @@ public class AndroidEmulatorBuildWrapper extends SimpleBuildWrapper{
             androidHome = json.optString("androidHome");
             shouldInstallSdk = json.optBoolean("shouldInstallSdk", true);
             shouldKeepInWorkspace = json.optBoolean("shouldKeepInWorkspace", false);
+            shouldReuseEmulators = json.optBoolean("shouldReuseEmulators", false);
             save();
             return true;
         }
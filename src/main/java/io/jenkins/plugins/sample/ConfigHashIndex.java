@@ -0,0 +1,323 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Item;
+import hudson.model.Node;
+import hudson.model.OneOffExecutor;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.queue.QueueListener;
+import hudson.model.queue.WorkUnit;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import io.jenkins.plugins.sample.cmd.model.EmulatorDemand;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Memoises what {@link TaskDispatcher} needs to decide whether a build can start on a node, since
+ * it is asked for every queued item, on every node, at every queue maintenance.
+ * <ul>
+ * <li>the environment of each computer, fetched from the agent only once per connection;</li>
+ * <li>the emulator configuration hash and resources of each job on each node, until the job or the
+ * node changes;</li>
+ * <li>the number of running builds per node and configuration hash, and the resources their
+ * emulators take on the node, updated when builds leave the queue and complete.</li>
+ * </ul>
+ */
+@Extension
+public class ConfigHashIndex extends ComputerListener {
+
+    // stands for "no emulator", concurrent maps do not hold null values
+    private static final String NO_HASH = "";
+
+    private final Map<Computer, EnvVars> environments = new ConcurrentHashMap<>();
+    // node name -> job full name -> hash
+    private final Map<String, Map<String, String>> hashes = new ConcurrentHashMap<>();
+    // node name -> job full name -> resources of the emulator
+    private final Map<String, Map<String, EmulatorDemand>> demands = new ConcurrentHashMap<>();
+    // node name -> hash -> running builds
+    private final Map<String, Map<String, Integer>> running = new HashMap<>();
+    // node name -> resources of the emulators of the running builds
+    private final Map<String, EmulatorDemand> runningDemands = new HashMap<>();
+    // queue item id, or boot id -> what its build has been counted with
+    private final Map<String, Entry> started = new HashMap<>();
+
+    public static ConfigHashIndex get() {
+        return ExtensionList.lookupSingleton(ConfigHashIndex.class);
+    }
+
+    /**
+     * Returns the environment of the computer, fetched from the agent the first time only.
+     */
+    @NonNull
+    public EnvVars getEnvironment(@NonNull Computer computer) throws IOException, InterruptedException {
+        EnvVars env = environments.get(computer);
+        if (env == null) {
+            env = computer.getEnvironment();
+            environments.put(computer, env);
+        }
+        return env;
+    }
+
+    /**
+     * Returns the configuration hash of the emulator of a job on a node, computing it the first
+     * time only.
+     */
+    @CheckForNull
+    String getConfigHash(@NonNull Node node, @NonNull Item job, @NonNull Supplier<String> hash) {
+        Map<String, String> nodeHashes = hashes.computeIfAbsent(node.getNodeName(), k -> new ConcurrentHashMap<>());
+        String value = nodeHashes.get(job.getFullName());
+        if (value == null) {
+            value = hash.get();
+            // a hash not resolved yet, eg: the environment of the node is not available, is not remembered
+            if (value != null) {
+                nodeHashes.put(job.getFullName(), value);
+            } else if (environments.containsKey(node.toComputer())) {
+                nodeHashes.put(job.getFullName(), NO_HASH);
+            }
+        }
+        return NO_HASH.equals(value) ? null : value;
+    }
+
+    /**
+     * Returns the resources of the emulator of a job on a node, computing them the first time only.
+     */
+    @NonNull
+    EmulatorDemand getEmulatorDemand(@NonNull Node node, @NonNull Item job, @NonNull Supplier<EmulatorDemand> demand) {
+        Map<String, EmulatorDemand> nodeDemands = demands.computeIfAbsent(node.getNodeName(), k -> new ConcurrentHashMap<>());
+        EmulatorDemand value = nodeDemands.get(job.getFullName());
+        if (value == null) {
+            // out of the map, the environment of the node may come from the agent
+            value = demand.get();
+            // resources computed without the environment of the node, it was not available, are not remembered
+            Computer computer = node.toComputer();
+            if (computer != null && environments.containsKey(computer)) {
+                nodeDemands.put(job.getFullName(), value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Checks if a build using an emulator with the given configuration runs on the node.
+     */
+    public synchronized boolean isRunning(@NonNull String nodeName, @NonNull String hash) {
+        Map<String, Integer> nodeRunning = running.get(nodeName);
+        return nodeRunning != null && nodeRunning.containsKey(hash);
+    }
+
+    /**
+     * Sums the resources of the emulators of the builds running on the node.
+     */
+    @NonNull
+    public synchronized EmulatorDemand getRunningDemand(@NonNull String nodeName) {
+        return runningDemands.getOrDefault(nodeName, EmulatorDemand.NONE);
+    }
+
+    // counts a build from the moment its queue item is handed to an executor, builds still pending
+    // are counted by TaskDispatcher
+    private void onLeft(Queue.LeftItem item) {
+        WorkUnit workUnit = item.outcome.getPrimaryWorkUnit();
+        Executor executor = workUnit != null ? workUnit.getExecutor() : null;
+        // matrix parents run on a flyweight executor, TaskDispatcher does not count them either
+        if (executor == null || executor instanceof OneOffExecutor) {
+            return;
+        }
+        Node node = executor.getOwner().getNode();
+        if (node == null) {
+            return;
+        }
+        Computer computer = node.toComputer();
+        if (computer != null && !environments.containsKey(computer)) {
+            // the queue is locked, the environment of the node is fetched from the agent meanwhile; TaskDispatcher
+            // has fetched it already to dispatch the item, unless the node reconnected since
+            Computer.threadPoolForRemoting.submit(() -> count(item, node, executor));
+            return;
+        }
+        count(item, node, executor);
+    }
+
+    private void count(Queue.LeftItem item, Node node, Executor executor) {
+        String hash = TaskDispatcher.getEmulatorConfigHashForTask(node, item.task);
+        if (hash == null) {
+            return;
+        }
+        EmulatorDemand demand = TaskDispatcher.getEmulatorDemandForTask(node, item.task);
+        synchronized (this) {
+            // builds that died before their run was created never complete
+            started.entrySet().removeIf(e -> {
+                boolean stale = e.getValue().executor != null && !e.getValue().executor.isActive();
+                if (stale) {
+                    uncount(e.getValue());
+                }
+                return stale;
+            });
+            count(String.valueOf(item.getId()), new Entry(node.getNodeName(), hash, demand, executor));
+        }
+    }
+
+    private synchronized void onCompleted(Run<?, ?> run) {
+        Entry entry = started.remove(String.valueOf(run.getQueueId()));
+        if (entry != null) {
+            uncount(entry);
+        }
+    }
+
+    /**
+     * Counts an emulator booted outside of a build, eg: by {@link EmulatorPrewarmer}, as a running
+     * build until {@link #removeBoot(String)}, so that no build uses its AVD meanwhile.
+     *
+     * @param id identifies the boot, it must not be a queue item id
+     */
+    synchronized void addBoot(@NonNull String id, @NonNull String nodeName, @NonNull String hash, @NonNull EmulatorDemand demand) {
+        count(id, new Entry(nodeName, hash, demand, null));
+    }
+
+    synchronized void removeBoot(@NonNull String id) {
+        Entry entry = started.remove(id);
+        if (entry != null) {
+            uncount(entry);
+        }
+    }
+
+    private void count(String id, Entry entry) {
+        Entry previous = started.put(id, entry);
+        if (previous != null) {
+            uncount(previous);
+        }
+        running.computeIfAbsent(entry.nodeName, k -> new HashMap<>()).merge(entry.hash, 1, Integer::sum);
+        runningDemands.merge(entry.nodeName, entry.demand, EmulatorDemand::plus);
+    }
+
+    private void uncount(Entry entry) {
+        Map<String, Integer> nodeRunning = running.get(entry.nodeName);
+        if (nodeRunning != null) {
+            nodeRunning.computeIfPresent(entry.hash, (k, count) -> count > 1 ? count - 1 : null);
+            if (nodeRunning.isEmpty()) {
+                running.remove(entry.nodeName);
+            }
+        }
+        EmulatorDemand demand = runningDemands.getOrDefault(entry.nodeName, EmulatorDemand.NONE).minus(entry.demand);
+        if (demand.getEmulators() > 0) {
+            runningDemands.put(entry.nodeName, demand);
+        } else {
+            runningDemands.remove(entry.nodeName);
+        }
+    }
+
+    private void invalidate(Computer computer) {
+        environments.remove(computer);
+        hashes.remove(computer.getName());
+        demands.remove(computer.getName());
+    }
+
+    private void invalidate(Item item) {
+        String prefix = item.getFullName();
+        // matrix configurations are named after their parent
+        forget(prefix);
+    }
+
+    private void forget(String fullName) {
+        for (Map<String, String> nodeHashes : hashes.values()) {
+            nodeHashes.keySet().removeIf(name -> name.equals(fullName) || name.startsWith(fullName + '/'));
+        }
+        for (Map<String, EmulatorDemand> nodeDemands : demands.values()) {
+            nodeDemands.keySet().removeIf(name -> name.equals(fullName) || name.startsWith(fullName + '/'));
+        }
+    }
+
+    @Override
+    public void onOnline(Computer c, TaskListener listener) {
+        invalidate(c);
+    }
+
+    @Override
+    public void onOffline(@NonNull Computer c, @CheckForNull OfflineCause cause) {
+        invalidate(c);
+    }
+
+    @Override
+    public void onConfigurationChange() {
+        // node properties, and global properties, contribute to the environment
+        environments.clear();
+        hashes.clear();
+        demands.clear();
+    }
+
+    // what a running build has been counted with
+    private static final class Entry {
+        final String nodeName;
+        final String hash;
+        final EmulatorDemand demand;
+        @CheckForNull
+        final Executor executor;
+
+        Entry(String nodeName, String hash, EmulatorDemand demand, @CheckForNull Executor executor) {
+            this.nodeName = nodeName;
+            this.hash = hash;
+            this.demand = demand;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Counts a build as running as soon as it leaves the queue, under the same lock as its removal
+     * from the pending items, so that {@link TaskDispatcher} never misses it.
+     */
+    @Extension
+    public static class StartedBuilds extends QueueListener {
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            if (!li.isCancelled()) {
+                ConfigHashIndex.get().onLeft(li);
+            }
+        }
+    }
+
+    /**
+     * Stops counting the builds that complete.
+     */
+    @Extension
+    public static class RunningBuilds extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            ConfigHashIndex.get().onCompleted(run);
+        }
+    }
+
+    /**
+     * Forgets the hashes of a job whose configuration changes.
+     */
+    @Extension
+    public static class JobChanges extends ItemListener {
+        @Override
+        public void onUpdated(Item item) {
+            ConfigHashIndex.get().invalidate(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            ConfigHashIndex.get().invalidate(item);
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            ConfigHashIndex.get().invalidate(item);
+            ConfigHashIndex.get().forget(oldFullName);
+        }
+    }
+}
@@ -46,8 +46,11 @@ public interface Constants {
     String ANDROID_CACHE = ".android";
 
     String EMULATOR_NAME_PREFIX = "emulator-";
+    String GOLDEN_SNAPSHOT_NAME = "jenkins_golden";
 
     /** Duration by which emulator booting should normally complete. */
     int BOOT_COMPLETE_TIMEOUT_MS = 360 * 1000;
+    /** Shell loop run on the device that returns once the boot is complete. */
+    String ADB_BOOT_COMPLETED_WATCH = "while [ \"$(getprop sys.boot_completed)\" != \"1\" ]; do sleep 0.2; done; getprop sys.boot_completed";
 
 }
@@ -0,0 +1,182 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import org.jvnet.localizer.Localizable;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent by {@link EmulatorRunner} in each phase of the boot of the emulator of a build.
+ * <p>
+ * Exposed through the remote API of the build, eg: {@code /job/foo/1/emulatorBoot/api/json}, and
+ * summed up per job by {@link EmulatorBootTrendAction} and per node by {@link EmulatorBootMetricsEndpoint}.
+ */
+@ExportedBean
+public class EmulatorBootMetrics implements RunAction2 {
+
+    /**
+     * Phases of the boot, in the order they run.
+     */
+    public enum Phase {
+        SDK_LIST(Messages._EmulatorBootMetrics_Phase_SDK_LIST()),
+        SDK_INSTALL(Messages._EmulatorBootMetrics_Phase_SDK_INSTALL()),
+        AVD_LIST(Messages._EmulatorBootMetrics_Phase_AVD_LIST()),
+        AVD_DELETE(Messages._EmulatorBootMetrics_Phase_AVD_DELETE()),
+        AVD_CREATE(Messages._EmulatorBootMetrics_Phase_AVD_CREATE()),
+        WRITE_CONFIG(Messages._EmulatorBootMetrics_Phase_WRITE_CONFIG()),
+        ADB_START(Messages._EmulatorBootMetrics_Phase_ADB_START()),
+        EMULATOR_SPAWN(Messages._EmulatorBootMetrics_Phase_EMULATOR_SPAWN()),
+        REPORT_CONSOLE(Messages._EmulatorBootMetrics_Phase_REPORT_CONSOLE()),
+        BOOT_WAIT(Messages._EmulatorBootMetrics_Phase_BOOT_WAIT()),
+        SNAPSHOT_SAVE(Messages._EmulatorBootMetrics_Phase_SNAPSHOT_SAVE());
+
+        private final Localizable displayName;
+
+        Phase(Localizable displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName.toString();
+        }
+
+        /**
+         * @return the name of the phase in the remote API and the metrics, eg: boot_wait
+         */
+        public String getKey() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private String node;
+    private boolean reused;
+    private boolean quickBoot;
+    // phase key -> milliseconds, in the order the phases ran
+    private final Map<String, Long> durations = new LinkedHashMap<>();
+
+    private transient Run<?, ?> run;
+
+    /**
+     * Adds the time elapsed since {@code startNanos} to the phase, a phase that runs twice is summed up.
+     *
+     * @param startNanos value of {@link System#nanoTime()} when the phase started
+     */
+    public synchronized void record(@NonNull Phase phase, long startNanos) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        durations.merge(phase.getKey(), elapsed, Long::sum);
+    }
+
+    /**
+     * @return milliseconds spent in the phase, {@code null} if the phase did not run
+     */
+    @CheckForNull
+    public synchronized Long getDuration(@NonNull Phase phase) {
+        return durations.get(phase.getKey());
+    }
+
+    /**
+     * @return the phases that ran, in their order
+     */
+    public synchronized List<Phase> getPhases() {
+        List<Phase> phases = new ArrayList<>();
+        for (Phase phase : Phase.values()) {
+            if (durations.containsKey(phase.getKey())) {
+                phases.add(phase);
+            }
+        }
+        return phases;
+    }
+
+    /**
+     * @return milliseconds spent in each phase that ran, by phase key
+     */
+    @Exported
+    public synchronized Map<String, Long> getDurations() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(durations));
+    }
+
+    /**
+     * @return milliseconds spent in all the phases
+     */
+    @Exported
+    public synchronized long getTotal() {
+        long total = 0;
+        for (long duration : durations.values()) {
+            total += duration;
+        }
+        return total;
+    }
+
+    @Exported
+    public String getNode() {
+        return node;
+    }
+
+    public void setNode(String node) {
+        this.node = node;
+    }
+
+    /**
+     * @return {@code true} if an emulator already booted has been leased from the {@link EmulatorPool}
+     */
+    @Exported
+    public boolean isReused() {
+        return reused;
+    }
+
+    public void setReused(boolean reused) {
+        this.reused = reused;
+    }
+
+    /**
+     * @return {@code true} if the emulator booted from the golden snapshot
+     */
+    @Exported
+    public boolean isQuickBoot() {
+        return quickBoot;
+    }
+
+    public void setQuickBoot(boolean quickBoot) {
+        this.quickBoot = quickBoot;
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.EmulatorBootMetrics_displayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "emulatorBoot";
+    }
+}
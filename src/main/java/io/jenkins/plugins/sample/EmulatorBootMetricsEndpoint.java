@@ -0,0 +1,152 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Boot times of the emulators per node, in the Prometheus text format, at {@code /emulator-metrics/}.
+ * <p>
+ * Boots are counted since the controller started:
+ * <ul>
+ * <li>{@code android_emulator_boot_phase_seconds}: summary of the time spent in each phase;</li>
+ * <li>{@code android_emulator_boot_phase_last_seconds}: time spent in each phase by the last boot;</li>
+ * <li>{@code android_emulator_boots_total}: boots by result, {@code reused} when the emulator came
+ * from the {@link EmulatorPool}.</li>
+ * </ul>
+ */
+@Extension
+public class EmulatorBootMetricsEndpoint implements RootAction {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String RESULT_SUCCESS = "success";
+    private static final String RESULT_FAILURE = "failure";
+    private static final String RESULT_REUSED = "reused";
+
+    // node name -> statistics
+    private final Map<String, NodeStats> nodes = new TreeMap<>();
+
+    public static EmulatorBootMetricsEndpoint get() {
+        return ExtensionList.lookupSingleton(EmulatorBootMetricsEndpoint.class);
+    }
+
+    /**
+     * Adds the boot of an emulator to the statistics of its node.
+     *
+     * @param success {@code false} if the boot failed, the phases that ran are counted anyway
+     */
+    public synchronized void record(@NonNull EmulatorBootMetrics metrics, boolean success) {
+        String node = metrics.getNode();
+        if (node == null) {
+            return;
+        }
+        NodeStats stats = nodes.computeIfAbsent(node.isEmpty() ? "built-in" : node, k -> new NodeStats());
+        String result = !success ? RESULT_FAILURE : metrics.isReused() ? RESULT_REUSED : RESULT_SUCCESS;
+        stats.boots.merge(result, 1L, Long::sum);
+        for (EmulatorBootMetrics.Phase phase : metrics.getPhases()) {
+            Long duration = metrics.getDuration(phase);
+            if (duration != null) {
+                int i = phase.ordinal();
+                stats.sum[i] += duration;
+                stats.count[i]++;
+                stats.last[i] = duration;
+            }
+        }
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.READ);
+        rsp.setContentType(CONTENT_TYPE);
+        try (PrintWriter writer = rsp.getWriter()) {
+            write(writer);
+        }
+    }
+
+    synchronized void write(PrintWriter writer) {
+        EmulatorBootMetrics.Phase[] phases = EmulatorBootMetrics.Phase.values();
+
+        writer.println("# HELP android_emulator_boot_phase_seconds Time spent in each phase of the emulator boot.");
+        writer.println("# TYPE android_emulator_boot_phase_seconds summary");
+        for (Map.Entry<String, NodeStats> entry : nodes.entrySet()) {
+            NodeStats stats = entry.getValue();
+            for (EmulatorBootMetrics.Phase phase : phases) {
+                int i = phase.ordinal();
+                if (stats.count[i] == 0) {
+                    continue;
+                }
+                String labels = labels(entry.getKey(), "phase", phase.getKey());
+                writer.println("android_emulator_boot_phase_seconds_sum" + labels + " " + seconds(stats.sum[i]));
+                writer.println("android_emulator_boot_phase_seconds_count" + labels + " " + stats.count[i]);
+            }
+        }
+
+        writer.println("# HELP android_emulator_boot_phase_last_seconds Time spent in each phase by the last emulator boot.");
+        writer.println("# TYPE android_emulator_boot_phase_last_seconds gauge");
+        for (Map.Entry<String, NodeStats> entry : nodes.entrySet()) {
+            NodeStats stats = entry.getValue();
+            for (EmulatorBootMetrics.Phase phase : phases) {
+                int i = phase.ordinal();
+                if (stats.count[i] > 0) {
+                    writer.println("android_emulator_boot_phase_last_seconds" + labels(entry.getKey(), "phase", phase.getKey())
+                            + " " + seconds(stats.last[i]));
+                }
+            }
+        }
+
+        writer.println("# HELP android_emulator_boots_total Emulator boots, by result.");
+        writer.println("# TYPE android_emulator_boots_total counter");
+        for (Map.Entry<String, NodeStats> entry : nodes.entrySet()) {
+            for (Map.Entry<String, Long> boots : entry.getValue().boots.entrySet()) {
+                writer.println("android_emulator_boots_total" + labels(entry.getKey(), "result", boots.getKey()) + " " + boots.getValue());
+            }
+        }
+    }
+
+    private static String labels(String node, String name, String value) {
+        return "{node=\"" + escape(node) + "\"," + name + "=\"" + escape(value) + "\"}";
+    }
+
+    // label values escape backslash, double quote and line feed
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ENGLISH, "%.3f", millis / 1000.0);
+    }
+
+    @Override
+    public String getIconFileName() {
+        // not listed, meant to be scraped
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.EmulatorBootMetrics_displayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "emulator-metrics";
+    }
+
+    private static final class NodeStats {
+        final long[] sum = new long[EmulatorBootMetrics.Phase.values().length];
+        final long[] count = new long[sum.length];
+        final long[] last = new long[sum.length];
+        // result -> boots
+        final Map<String, Long> boots = new TreeMap<>();
+    }
+}
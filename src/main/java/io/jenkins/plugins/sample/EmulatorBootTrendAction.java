@@ -0,0 +1,146 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Action;
+import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.util.ChartUtil;
+import hudson.util.DataSetBuilder;
+import hudson.util.Graph;
+import jenkins.model.TransientActionFactory;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+
+import java.awt.Color;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trend of the {@link EmulatorBootMetrics} of the last builds of a job, stacked by phase, shown on
+ * the page of the job.
+ */
+public class EmulatorBootTrendAction implements Action {
+
+    private static final int MAX_BUILDS = 30;
+
+    private final Job<?, ?> job;
+
+    public EmulatorBootTrendAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    /**
+     * @return {@code true} if the last build recorded the boot of its emulator
+     */
+    public boolean hasData() {
+        Run<?, ?> last = job.getLastBuild();
+        return last != null && last.getAction(EmulatorBootMetrics.class) != null;
+    }
+
+    public Graph getGraph() {
+        Run<?, ?> last = job.getLastBuild();
+        long timestamp = last != null ? last.getTimeInMillis() : 0;
+        return new Graph(timestamp, 500, 200) {
+            @Override
+            protected JFreeChart createGraph() {
+                JFreeChart chart = ChartFactory.createStackedAreaChart(null, null, Messages.EmulatorBootTrendAction_seconds(),
+                        buildDataSet().build(), PlotOrientation.VERTICAL, true, true, false);
+                chart.setBackgroundPaint(Color.WHITE);
+                CategoryPlot plot = chart.getCategoryPlot();
+                plot.setBackgroundPaint(Color.WHITE);
+                plot.setRangeGridlinePaint(Color.GRAY);
+                CategoryAxis domainAxis = plot.getDomainAxis();
+                domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_90);
+                domainAxis.setLowerMargin(0.0);
+                domainAxis.setUpperMargin(0.0);
+                domainAxis.setCategoryMargin(0.0);
+                return chart;
+            }
+        };
+    }
+
+    private DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel> buildDataSet() {
+        DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel> dataSet = new DataSetBuilder<>();
+        for (Run<?, ?> run : job.getBuilds().limit(MAX_BUILDS)) {
+            EmulatorBootMetrics metrics = run.getAction(EmulatorBootMetrics.class);
+            if (metrics == null) {
+                continue;
+            }
+            ChartUtil.NumberOnlyBuildLabel label = new ChartUtil.NumberOnlyBuildLabel(run);
+            // every phase has a value, for the areas to stack
+            for (EmulatorBootMetrics.Phase phase : EmulatorBootMetrics.Phase.values()) {
+                Long duration = metrics.getDuration(phase);
+                dataSet.add(duration != null ? duration / 1000.0 : 0, phase.getDisplayName(), label);
+            }
+        }
+        return dataSet;
+    }
+
+    @Override
+    public String getIconFileName() {
+        // only shown on the page of the job
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.EmulatorBootTrendAction_displayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "emulatorBootTrend";
+    }
+
+    /**
+     * Adds the trend to the jobs configured with the {@link AndroidEmulatorBuildWrapper}, and to the
+     * other jobs, eg: pipelines, once one of their builds booted an emulator since the controller
+     * started. The builds are not looked at, that would load them for every job of the instance.
+     */
+    @Extension
+    public static class Factory extends TransientActionFactory<Job> {
+
+        // full names of the jobs without the wrapper in their configuration that booted an emulator
+        private final Set<String> jobs = ConcurrentHashMap.newKeySet();
+
+        public static Factory get() {
+            return ExtensionList.lookupSingleton(Factory.class);
+        }
+
+        /**
+         * Records that a build of the job booted an emulator.
+         */
+        public void add(@NonNull Job<?, ?> job) {
+            jobs.add(job.getFullName());
+        }
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @NonNull
+        @Override
+        public Collection<? extends Action> createFor(@NonNull Job target) {
+            boolean configured = target instanceof BuildableItemWithBuildWrappers
+                    && ((BuildableItemWithBuildWrappers) target).getBuildWrappersList().get(AndroidEmulatorBuildWrapper.class) != null;
+            if (!configured && !jobs.contains(target.getFullName())) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new EmulatorBootTrendAction(target));
+        }
+    }
+}
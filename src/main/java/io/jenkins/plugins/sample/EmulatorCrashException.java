@@ -0,0 +1,66 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jvnet.localizer.Localizable;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The emulator process exited while it was booting.
+ */
+public class EmulatorCrashException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Why the emulator crashed, told by its output.
+     */
+    public enum Reason {
+        NO_KVM(Messages._EmulatorCrashException_Reason_NO_KVM()),
+        MISSING_LIB(Messages._EmulatorCrashException_Reason_MISSING_LIB()),
+        AVD_CORRUPT(Messages._EmulatorCrashException_Reason_AVD_CORRUPT()),
+        OUT_OF_MEMORY(Messages._EmulatorCrashException_Reason_OUT_OF_MEMORY()),
+        UNKNOWN(Messages._EmulatorCrashException_Reason_UNKNOWN());
+
+        private final Localizable description;
+
+        Reason(Localizable description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description.toString();
+        }
+
+        /**
+         * @return the name of the reason, eg: no-kvm
+         */
+        public String getKey() {
+            return name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+        }
+    }
+
+    private final Reason reason;
+    private final int exitCode;
+
+    /**
+     * @param evidence the line of the emulator output that tells the reason, if any
+     */
+    public EmulatorCrashException(@NonNull Reason reason, int exitCode, @CheckForNull String evidence) {
+        super(Messages.EmulatorCrashException_message(exitCode, reason.getDescription())
+                + (evidence != null ? ": " + evidence : ""));
+        this.reason = reason;
+        this.exitCode = exitCode;
+    }
+
+    @NonNull
+    public Reason getReason() {
+        return reason;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+}
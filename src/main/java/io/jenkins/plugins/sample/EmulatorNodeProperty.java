@@ -0,0 +1,100 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.NodePropertyDescriptor;
+import hudson.util.FormValidation;
+import io.jenkins.plugins.sample.cmd.model.EmulatorDemand;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Resources of a node that Android emulators may use at the same time.
+ * <p>
+ * {@link TaskDispatcher} only starts a build with an emulator on the node if
+ * the emulators already running there, plus the new one, fit. A value of 0
+ * leaves the resource unlimited. Nodes without this property run as many
+ * emulators as builds are scheduled on them.
+ */
+public class EmulatorNodeProperty extends NodeProperty<Node> {
+
+    private int maxEmulators;
+    private int cores;
+    private int memory;
+
+    @DataBoundConstructor
+    public EmulatorNodeProperty() {
+        // all resources unlimited by default
+    }
+
+    public int getMaxEmulators() {
+        return maxEmulators;
+    }
+
+    @DataBoundSetter
+    public void setMaxEmulators(int maxEmulators) {
+        this.maxEmulators = Math.max(0, maxEmulators);
+    }
+
+    public int getCores() {
+        return cores;
+    }
+
+    @DataBoundSetter
+    public void setCores(int cores) {
+        this.cores = Math.max(0, cores);
+    }
+
+    /**
+     * @return megabytes of RAM available to the emulators
+     */
+    public int getMemory() {
+        return memory;
+    }
+
+    @DataBoundSetter
+    public void setMemory(int memory) {
+        this.memory = Math.max(0, memory);
+    }
+
+    /**
+     * Checks if the given resources fit on the node.
+     *
+     * @param total resources of all the emulators that would run on the node
+     * @return the reason why they do not fit, {@code null} if they fit
+     */
+    @CheckForNull
+    public String exceeds(@NonNull EmulatorDemand total) {
+        if (maxEmulators > 0 && total.getEmulators() > maxEmulators) {
+            return Messages.EmulatorNodeProperty_maxEmulators(maxEmulators);
+        }
+        if (cores > 0 && total.getCores() > cores) {
+            return Messages.EmulatorNodeProperty_cores(total.getCores(), cores);
+        }
+        if (memory > 0 && total.getMemory() > memory) {
+            return Messages.EmulatorNodeProperty_memory(total.getMemory(), memory);
+        }
+        return null;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends NodePropertyDescriptor {
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return Messages.EmulatorNodeProperty_displayName();
+        }
+
+        public FormValidation doCheckMaxEmulators(@QueryParameter int value) {
+            if (value > EmulatorPortAllocator.MAX_EMULATORS) {
+                return FormValidation.error(Messages.EmulatorNodeProperty_tooManyEmulators(EmulatorPortAllocator.MAX_EMULATORS));
+            }
+            return FormValidation.ok();
+        }
+    }
+}
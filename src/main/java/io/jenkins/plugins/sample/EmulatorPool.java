@@ -0,0 +1,226 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Computer;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import io.jenkins.plugins.sample.cmd.model.EmulatorConfig;
+import io.jenkins.plugins.sample.cmd.model.EmulatorDemand;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Keeps booted Android emulators alive between builds, so that a later build on the same node
+ * with the same emulator configuration can lease an already booted device instead of cold booting
+ * a new one.
+ * <p>
+ * Emulators are grouped per node and keyed by the configuration hash computed by
+ * {@link AndroidEmulatorBuildWrapper#getConfigHash(hudson.model.Node, hudson.matrix.Combination)},
+ * the same hash {@link TaskDispatcher} uses to prevent two builds from using the same emulator at
+ * once. An emulator is either leased by exactly one build or idle in the pool.
+ * </p>
+ * The pool only lives in the controller memory: when a node goes offline all of its entries are
+ * forgotten, since there is no way to know whether the emulator processes survived.
+ */
+@Extension
+public class EmulatorPool extends ComputerListener {
+
+    private final Map<String, List<PooledEmulator>> nodes = new HashMap<>();
+
+    public static EmulatorPool get() {
+        return ExtensionList.lookupSingleton(EmulatorPool.class);
+    }
+
+    /**
+     * Leases an idle emulator booted with the given configuration.
+     *
+     * @param nodeName The node on which the emulator must run.
+     * @param configHash The emulator configuration hash.
+     * @return the leased emulator, or {@code null} if there is no idle emulator for this configuration.
+     */
+    @CheckForNull
+    public synchronized PooledEmulator lease(@NonNull String nodeName, @NonNull String configHash) {
+        for (PooledEmulator emulator : getEmulators(nodeName)) {
+            if (!emulator.leased && configHash.equals(emulator.configHash)) {
+                emulator.leased = true;
+                emulator.lastUsed = System.currentTimeMillis();
+                return emulator;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds an emulator just booted by a build to the pool, already leased by that build.
+     *
+     * @param snapshot name of a snapshot that restores the emulator to a clean
+     *        state, {@code null} if the emulator has none
+     */
+    @NonNull
+    public synchronized PooledEmulator register(@NonNull String nodeName, @NonNull String configHash, @NonNull EmulatorConfig config,
+                                                @CheckForNull String snapshot) {
+        PooledEmulator emulator = new PooledEmulator(nodeName, configHash, config.getEmulatorName(),
+                config.getEmulatorConsolePort(), config.getEmulatorADBConnectPort(), config.getAdbServerPort(), snapshot,
+                EmulatorDemand.of(config.getHardwareProperties()));
+        emulator.leased = true;
+        emulator.lastUsed = System.currentTimeMillis();
+        nodes.computeIfAbsent(nodeName, k -> new ArrayList<>()).add(emulator);
+        return emulator;
+    }
+
+    /**
+     * Gives back a leased emulator, it becomes available to the next build with the same configuration.
+     */
+    public synchronized void release(@NonNull PooledEmulator emulator) {
+        emulator.leased = false;
+        emulator.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Removes an emulator from the pool, typically because it has been killed or it no longer responds.
+     */
+    public synchronized void discard(@NonNull PooledEmulator emulator) {
+        List<PooledEmulator> emulators = nodes.get(emulator.nodeName);
+        if (emulators != null) {
+            emulators.remove(emulator);
+            if (emulators.isEmpty()) {
+                nodes.remove(emulator.nodeName);
+            }
+        }
+    }
+
+    /**
+     * Looks up the emulator listening on the given console port of a node.
+     */
+    @CheckForNull
+    public synchronized PooledEmulator find(@NonNull String nodeName, int consolePort) {
+        for (PooledEmulator emulator : getEmulators(nodeName)) {
+            if (emulator.consolePort == consolePort) {
+                return emulator;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes from the pool all idle emulators of a node matching the given filter. The caller is
+     * in charge to kill the returned emulators.
+     */
+    @NonNull
+    public synchronized List<PooledEmulator> evictIdle(@NonNull String nodeName, @NonNull Predicate<PooledEmulator> filter) {
+        List<PooledEmulator> evicted = new ArrayList<>();
+        List<PooledEmulator> emulators = nodes.get(nodeName);
+        if (emulators == null) {
+            return evicted;
+        }
+        for (Iterator<PooledEmulator> it = emulators.iterator(); it.hasNext();) {
+            PooledEmulator emulator = it.next();
+            if (!emulator.leased && filter.test(emulator)) {
+                it.remove();
+                evicted.add(emulator);
+            }
+        }
+        if (emulators.isEmpty()) {
+            nodes.remove(nodeName);
+        }
+        return evicted;
+    }
+
+    /**
+     * Returns a snapshot of the emulators, leased or idle, known on the given node.
+     */
+    @NonNull
+    public synchronized List<PooledEmulator> getEmulators(@NonNull String nodeName) {
+        List<PooledEmulator> emulators = nodes.get(nodeName);
+        return emulators == null ? new ArrayList<>() : new ArrayList<>(emulators);
+    }
+
+    @Override
+    public synchronized void onOffline(@NonNull Computer c, @CheckForNull OfflineCause cause) {
+        nodes.remove(c.getName());
+    }
+
+    /**
+     * An emulator process running on a node and owned by the pool.
+     */
+    public static final class PooledEmulator {
+        private final String nodeName;
+        private final String configHash;
+        private final String avdName;
+        private final int consolePort;
+        private final int adbConnectPort;
+        private final int adbServerPort;
+        private final String snapshot;
+        private final EmulatorDemand demand;
+        private volatile boolean leased;
+        private volatile long lastUsed;
+
+        PooledEmulator(String nodeName, String configHash, String avdName, int consolePort, int adbConnectPort, int adbServerPort,
+                       String snapshot, EmulatorDemand demand) {
+            this.nodeName = nodeName;
+            this.configHash = configHash;
+            this.avdName = avdName;
+            this.consolePort = consolePort;
+            this.adbConnectPort = adbConnectPort;
+            this.adbServerPort = adbServerPort;
+            this.snapshot = snapshot;
+            this.demand = demand;
+        }
+
+        public String getNodeName() {
+            return nodeName;
+        }
+
+        public String getConfigHash() {
+            return configHash;
+        }
+
+        public String getAvdName() {
+            return avdName;
+        }
+
+        public int getConsolePort() {
+            return consolePort;
+        }
+
+        public int getAdbConnectPort() {
+            return adbConnectPort;
+        }
+
+        public int getAdbServerPort() {
+            return adbServerPort;
+        }
+
+        @CheckForNull
+        public String getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * Resources of the node used by the emulator, also while idle.
+         */
+        public EmulatorDemand getDemand() {
+            return demand;
+        }
+
+        public String getSerial() {
+            return Constants.EMULATOR_NAME_PREFIX + consolePort;
+        }
+
+        public boolean isLeased() {
+            return leased;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Computer;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hands out the ports of the emulators started on each node, so that several
+ * builds can run an emulator on the same node at the same time.
+ * <p>
+ * Each build gets an even console port with the next odd port for the adb
+ * connection (emulator-5554 uses 5554 and 5555) and a port to receive the
+ * report of the emulator console. Ports are free again when the build
+ * completes, except those of an emulator kept by the {@link EmulatorPool},
+ * which stay taken until the emulator leaves the pool.
+ */
+@Extension(ordinal = -100) // free the ports after the emulators have been shut down
+public class EmulatorPortAllocator extends RunListener<Run<?, ?>> {
+
+    /** First console port scanned by adb. */
+    public static final int MIN_CONSOLE_PORT = Constants.EMULATOR_DEFAULT_CONSOLE_PORT;
+    /** Last console port accepted by the emulator. */
+    public static final int MAX_CONSOLE_PORT = 5682;
+    /** Number of emulators that can run at the same time on a node. */
+    public static final int MAX_EMULATORS = (MAX_CONSOLE_PORT - MIN_CONSOLE_PORT) / 2 + 1;
+
+    private static final int MIN_REPORT_PORT = 55000;
+    private static final int MAX_REPORT_PORT = 55999;
+
+    // node name -> port -> build that holds the port
+    private final Map<String, Map<Integer, String>> reserved = new HashMap<>();
+
+    public static EmulatorPortAllocator get() {
+        return ExtensionList.lookupSingleton(EmulatorPortAllocator.class);
+    }
+
+    /**
+     * Reserves the ports of an emulator for the given build.
+     *
+     * @param computer the node where the emulator runs
+     * @param run the build that starts the emulator
+     * @return ports not used by other builds nor bound by another process on the node
+     * @throws IOException if all ports are taken
+     */
+    @NonNull
+    public Ports allocate(@NonNull Computer computer, @NonNull Run<?, ?> run) throws IOException, InterruptedException {
+        return allocate(computer, run.getExternalizableId());
+    }
+
+    /**
+     * Reserves the ports of an emulator started outside of a build.
+     *
+     * @param owner identifies the holder of the ports, to {@link #free(String) free} them
+     */
+    @NonNull
+    public Ports allocate(@NonNull Computer computer, @NonNull String owner) throws IOException, InterruptedException {
+        String nodeName = computer.getName();
+        VirtualChannel channel = computer.getChannel();
+
+        Set<Integer> busy = new HashSet<>();
+        while (true) {
+            Ports ports;
+            synchronized (this) {
+                ports = pick(nodeName, busy);
+                if (ports == null) {
+                    throw new IOException("No free emulator port left on " + computer.getDisplayName());
+                }
+                Map<Integer, String> nodePorts = reserved.computeIfAbsent(nodeName, k -> new HashMap<>());
+                for (int port : ports.toArray()) {
+                    nodePorts.put(port, owner);
+                }
+            }
+
+            // other processes, or emulators left behind by a restart, may bind the ports
+            Set<Integer> bound = channel != null ? channel.call(new BoundPortsTask(ports.toArray())) : new HashSet<>();
+            if (bound.isEmpty()) {
+                return ports;
+            }
+
+            busy.addAll(bound);
+            synchronized (this) {
+                Map<Integer, String> nodePorts = reserved.get(nodeName);
+                for (int port : ports.toArray()) {
+                    nodePorts.remove(port, owner);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives back all the ports reserved by the given build.
+     */
+    public void free(@NonNull Run<?, ?> run) {
+        free(run.getExternalizableId());
+    }
+
+    /**
+     * Gives back all the ports reserved by the given owner.
+     */
+    public synchronized void free(@NonNull String owner) {
+        for (Map<Integer, String> nodePorts : reserved.values()) {
+            nodePorts.values().removeIf(owner::equals);
+        }
+        reserved.values().removeIf(Map::isEmpty);
+    }
+
+    @Override
+    public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+        free(run);
+    }
+
+    private Ports pick(String nodeName, Set<Integer> busy) {
+        Set<Integer> taken = new HashSet<>(busy);
+        taken.addAll(reserved.getOrDefault(nodeName, new HashMap<>()).keySet());
+        for (EmulatorPool.PooledEmulator emulator : EmulatorPool.get().getEmulators(nodeName)) {
+            taken.add(emulator.getConsolePort());
+            taken.add(emulator.getAdbConnectPort());
+        }
+        return pick(taken);
+    }
+
+    // the first free pair of console and adb ports, and the first free report port
+    static Ports pick(Set<Integer> taken) {
+        int consolePort = -1;
+        for (int port = MIN_CONSOLE_PORT; port <= MAX_CONSOLE_PORT; port += 2) {
+            if (!taken.contains(port) && !taken.contains(port + 1)) {
+                consolePort = port;
+                break;
+            }
+        }
+        int reportPort = -1;
+        for (int port = MIN_REPORT_PORT; port <= MAX_REPORT_PORT; port++) {
+            if (!taken.contains(port)) {
+                reportPort = port;
+                break;
+            }
+        }
+        if (consolePort == -1 || reportPort == -1) {
+            return null;
+        }
+        return new Ports(consolePort, consolePort + 1, reportPort);
+    }
+
+    /**
+     * Ports reserved for an emulator.
+     */
+    public static final class Ports {
+        private final int consolePort;
+        private final int adbConnectPort;
+        private final int reportConsolePort;
+
+        Ports(int consolePort, int adbConnectPort, int reportConsolePort) {
+            this.consolePort = consolePort;
+            this.adbConnectPort = adbConnectPort;
+            this.reportConsolePort = reportConsolePort;
+        }
+
+        public int getConsolePort() {
+            return consolePort;
+        }
+
+        public int getAdbConnectPort() {
+            return adbConnectPort;
+        }
+
+        public int getReportConsolePort() {
+            return reportConsolePort;
+        }
+
+        int[] toArray() {
+            return new int[] { consolePort, adbConnectPort, reportConsolePort };
+        }
+    }
+
+    /**
+     * Returns which of the given ports are already bound on the loopback interface of the node.
+     */
+    static final class BoundPortsTask extends MasterToSlaveCallable<Set<Integer>, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] ports;
+
+        BoundPortsTask(int[] ports) {
+            this.ports = ports.clone();
+        }
+
+        @Override
+        public Set<Integer> call() {
+            Set<Integer> bound = new HashSet<>();
+            for (int port : ports) {
+                try (ServerSocket ignored = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+                    // the port can be bound
+                } catch (IOException e) {
+                    bound.add(port);
+                }
+            }
+            return bound;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.FilePath;
+import hudson.matrix.MatrixConfiguration;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
+import hudson.model.Job;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.queue.SubTask;
+import hudson.remoting.VirtualChannel;
+import io.jenkins.plugins.sample.cmd.help.EmulatorConsoleClient;
+import io.jenkins.plugins.sample.cmd.model.EmulatorConfig;
+import io.jenkins.plugins.sample.cmd.model.EmulatorDemand;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boots emulators ahead of the builds that are going to need them, so that the first build with a
+ * configuration on a node leases an emulator from the {@link EmulatorPool} already booted instead of
+ * waiting for a cold boot.
+ * <p>
+ * The configurations booted are those of the builds waiting in the queue first, then those of the
+ * jobs that often ran lately. An emulator is only booted on a node that is online, has an idle
+ * executor, can run the job and, per its {@link EmulatorNodeProperty}, has room for it next to the
+ * emulators already there.
+ * <p>
+ * The RAM taken is bounded by system properties:
+ * <ul>
+ * <li>{@code io.jenkins.plugins.sample.EmulatorPrewarmer.maxIdle}: number of idle emulators of the pool
+ * above which a node is not pre-warmed, 0 disables the pre-warming, 1 by default;</li>
+ * <li>{@code io.jenkins.plugins.sample.EmulatorPrewarmer.idleTimeout}: minutes after which an idle
+ * emulator of the pool is shut down, 0 keeps them, 30 by default.</li>
+ * </ul>
+ */
+@Extension
+public class EmulatorPrewarmer extends AsyncPeriodicWork {
+
+    private static final int MAX_IDLE = SystemProperties.getInteger(EmulatorPrewarmer.class.getName() + ".maxIdle", 1);
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(
+            SystemProperties.getLong(EmulatorPrewarmer.class.getName() + ".idleTimeout", 30L));
+    // jobs that started at least MIN_BUILDS builds within HISTORY are worth an emulator in advance
+    private static final long HISTORY = TimeUnit.HOURS.toMillis(
+            SystemProperties.getLong(EmulatorPrewarmer.class.getName() + ".history", 24L));
+    private static final int MIN_BUILDS = 2;
+
+    private static final String WORKSPACE = "emulator-prewarm";
+
+    public EmulatorPrewarmer() {
+        super("Android emulator pre-warming");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MIN;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        shutdownIdle(listener);
+
+        AndroidEmulatorBuildWrapper.DescriptorImpl descriptor = Jenkins.get().getDescriptorByType(AndroidEmulatorBuildWrapper.DescriptorImpl.class);
+        if (MAX_IDLE <= 0 || descriptor == null || !descriptor.shouldReuseEmulators || descriptor.shouldKeepInWorkspace) {
+            // booted emulators can only be handed over through the pool
+            return;
+        }
+
+        List<SubTask> candidates = getCandidates();
+        if (candidates.isEmpty()) {
+            return;
+        }
+        // the nodes boot in parallel, one boot per node at a time, the next run picks the next configuration
+        List<Future<?>> boots = new ArrayList<>();
+        for (Computer computer : Jenkins.get().getComputers()) {
+            Node node = computer.getNode();
+            if (node == null || computer.isOffline() || computer.countIdle() == 0) {
+                continue;
+            }
+            for (SubTask task : candidates) {
+                Future<?> boot = prewarm(node, computer, task, listener);
+                if (boot != null) {
+                    boots.add(boot);
+                    break;
+                }
+            }
+        }
+        // the listener is closed once this run returns
+        for (Future<?> boot : boots) {
+            try {
+                boot.get();
+            } catch (ExecutionException e) {
+                listener.getLogger().println("Unable to pre-warm an emulator: " + e.getCause());
+            }
+        }
+    }
+
+    // shuts down the emulators of the pool that nobody leased for too long
+    private static void shutdownIdle(TaskListener listener) throws InterruptedException {
+        if (IDLE_TIMEOUT <= 0) {
+            return;
+        }
+        long expired = System.currentTimeMillis() - IDLE_TIMEOUT;
+        EmulatorPool pool = EmulatorPool.get();
+        for (Computer computer : Jenkins.get().getComputers()) {
+            VirtualChannel channel = computer.getChannel();
+            if (channel == null) {
+                continue;
+            }
+            List<EmulatorPool.PooledEmulator> idleEmulators = pool.evictIdle(computer.getName(), e -> e.getLastUsed() < expired);
+            if (idleEmulators.isEmpty()) {
+                continue;
+            }
+            for (EmulatorPool.PooledEmulator idle : idleEmulators) {
+                listener.getLogger().println("Shutting down the emulator " + idle.getSerial() + " idle on " + computer.getDisplayName());
+                ADBServerManager.get().release(computer, idle.getConsolePort());
+            }
+            int[] ports = idleEmulators.stream().mapToInt(EmulatorPool.PooledEmulator::getConsolePort).toArray();
+            try {
+                for (int port : channel.call(new EmulatorConsoleClient.ShutdownTask(EmulatorConsoleClient.SHUTDOWN_TIMEOUT_MS, ports))) {
+                    listener.getLogger().println("Emulator " + Constants.EMULATOR_NAME_PREFIX + port + " did not shut down in time, killed");
+                }
+            } catch (IOException e) {
+                listener.getLogger().println("Unable to shut down the idle emulators of " + computer.getDisplayName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // the tasks with an emulator waiting in the queue, then the jobs that often ran lately, most built first
+    private static List<SubTask> getCandidates() {
+        Set<SubTask> candidates = new LinkedHashSet<>();
+        for (Queue.BuildableItem item : Jenkins.get().getQueue().getBuildableItems()) {
+            if (TaskDispatcher.getAndroidWrapper(item.task) != null) {
+                candidates.add(item.task);
+            }
+        }
+        for (String fullName : ExtensionList.lookupSingleton(History.class).getFrequentJobs()) {
+            Job<?, ?> job = Jenkins.get().getItemByFullName(fullName, Job.class);
+            if (job instanceof SubTask && TaskDispatcher.getAndroidWrapper((SubTask) job) != null) {
+                candidates.add((SubTask) job);
+            }
+        }
+        return new ArrayList<>(candidates);
+    }
+
+    /**
+     * Starts to boot the emulator of the task on the node, unless the node can not run it or already
+     * has it.
+     *
+     * @return the boot running in the background, {@code null} if no emulator is booted
+     */
+    @CheckForNull
+    private static Future<?> prewarm(Node node, Computer computer, SubTask task, TaskListener listener) {
+        String nodeName = computer.getName();
+        Label label = task.getAssignedLabel();
+        if (label != null && !label.contains(node)) {
+            return null;
+        }
+        String hash = TaskDispatcher.getEmulatorConfigHashForTask(node, task);
+        if (hash == null || hash.contains("$") || ConfigHashIndex.get().isRunning(nodeName, hash)) {
+            return null;
+        }
+
+        EmulatorPool pool = EmulatorPool.get();
+        int idle = 0;
+        for (EmulatorPool.PooledEmulator emulator : pool.getEmulators(nodeName)) {
+            if (hash.equals(emulator.getConfigHash())) {
+                // booted already, leased or not
+                return null;
+            }
+            if (!emulator.isLeased()) {
+                idle++;
+            }
+        }
+        if (idle >= MAX_IDLE) {
+            return null;
+        }
+
+        // only the emulators restored from a snapshot between builds go to the pool
+        AndroidEmulatorBuildWrapper wrapper = TaskDispatcher.getAndroidWrapper(task);
+        if (wrapper == null || !wrapper.isUseSnapshots()) {
+            return null;
+        }
+
+        // a pre-warmed emulator must fit next to all the others, it never makes room by itself
+        EmulatorNodeProperty capacity = node.getNodeProperties().get(EmulatorNodeProperty.class);
+        EmulatorDemand demand = TaskDispatcher.getEmulatorDemandForTask(node, task);
+        if (capacity != null) {
+            EmulatorDemand total = TaskDispatcher.getRunningDemand(node, computer);
+            for (EmulatorPool.PooledEmulator emulator : pool.getEmulators(nodeName)) {
+                if (!emulator.isLeased()) {
+                    total = total.plus(emulator.getDemand());
+                }
+            }
+            if (capacity.exceeds(total.plus(demand)) != null) {
+                return null;
+            }
+        }
+
+        // the boot counts as a running build: the queued builds with this configuration wait for it
+        // instead of recreating its AVD, and its resources are taken on the node
+        String owner = WORKSPACE + "/" + nodeName + "/" + hash;
+        ConfigHashIndex.get().addBoot(owner, nodeName, hash, demand);
+        listener.getLogger().println("Pre-warming the emulator " + hash + " on " + computer.getDisplayName());
+        try {
+            return Computer.threadPoolForRemoting.submit(() -> {
+                try {
+                    boot(node, computer, wrapper, task, hash, owner, listener);
+                } catch (IOException | RuntimeException e) {
+                    listener.getLogger().println("Unable to pre-warm the emulator " + hash + " on " + computer.getDisplayName() + ": "
+                            + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    ConfigHashIndex.get().removeBoot(owner);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ConfigHashIndex.get().removeBoot(owner);
+            throw e;
+        }
+    }
+
+    private static void boot(Node node, Computer computer, AndroidEmulatorBuildWrapper wrapper, SubTask task, String hash, String owner,
+                             TaskListener listener) throws IOException, InterruptedException {
+        FilePath root = node.getRootPath();
+        if (root == null) {
+            throw new IOException(computer.getDisplayName() + " is offline");
+        }
+        FilePath workspace = root.child(WORKSPACE);
+
+        // the environment a build would see before its own variables
+        EnvVars env = new EnvVars(ConfigHashIndex.get().getEnvironment(computer));
+        Map<String, String> combination = getCombination(task);
+        if (combination != null) {
+            env.putAll(combination);
+        }
+        env.put(Constants.ENV_VAR_ANDROID_SDK_ROOT, wrapper.getSDKRoot());
+        wrapper.buildEnvVars(workspace, env);
+
+        EmulatorConfig config = wrapper.createConfig(env);
+        EmulatorPortAllocator allocator = EmulatorPortAllocator.get();
+        try {
+            EmulatorPortAllocator.Ports ports = allocator.allocate(computer, owner);
+            config.setEmulatorConsolePort(ports.getConsolePort());
+            config.setEmulatorADBConnectPort(ports.getAdbConnectPort());
+            config.setEmulatorReportConsolePort(ports.getReportConsolePort());
+
+            EmulatorRunner runner = new EmulatorRunner(config);
+            runner.setConfigHash(hash);
+            EmulatorPool.PooledEmulator pooled = runner.run(workspace, listener, env);
+            EmulatorBootMetricsEndpoint.get().record(runner.getBootMetrics(), true);
+            if (pooled != null) {
+                // waits in the pool for the first build with this configuration
+                EmulatorPool.get().release(pooled);
+            } else {
+                // the snapshot could not be saved, nobody would ever lease the emulator
+                listener.getLogger().println("No snapshot of the emulator " + hash + ", shutting it down");
+                ADBServerManager.get().release(computer, config.getEmulatorConsolePort());
+                VirtualChannel channel = computer.getChannel();
+                if (channel != null) {
+                    channel.call(new EmulatorConsoleClient.ShutdownTask(EmulatorConsoleClient.SHUTDOWN_TIMEOUT_MS, config.getEmulatorConsolePort()));
+                }
+            }
+        } finally {
+            // the pool keeps the ports of its emulators
+            allocator.free(owner);
+        }
+    }
+
+    @CheckForNull
+    private static Map<String, String> getCombination(SubTask task) {
+        return task instanceof MatrixConfiguration ? ((MatrixConfiguration) task).getCombination() : null;
+    }
+
+    /**
+     * Remembers when the jobs running an emulator started their last builds.
+     */
+    @Extension
+    public static class History extends RunListener<Run<?, ?>> {
+
+        // job full name -> start time of its builds within HISTORY, oldest first
+        private final Map<String, Deque<Long>> starts = new HashMap<>();
+
+        @Override
+        public void onStarted(Run<?, ?> run, @NonNull TaskListener listener) {
+            Job<?, ?> job = run.getParent();
+            if (job instanceof SubTask && TaskDispatcher.getAndroidWrapper((SubTask) job) != null) {
+                record(job.getFullName(), run.getStartTimeInMillis());
+            }
+        }
+
+        synchronized void record(String fullName, long time) {
+            starts.computeIfAbsent(fullName, k -> new ArrayDeque<>()).addLast(time);
+        }
+
+        /**
+         * @return the jobs that started a few builds lately, most built first
+         */
+        synchronized List<String> getFrequentJobs() {
+            long expired = System.currentTimeMillis() - HISTORY;
+            Map<String, Integer> counts = new HashMap<>();
+            starts.values().forEach(times -> times.removeIf(t -> t < expired));
+            starts.values().removeIf(Deque::isEmpty);
+            starts.forEach((job, times) -> {
+                if (times.size() >= MIN_BUILDS) {
+                    counts.put(job, times.size());
+                }
+            });
+            List<String> jobs = new ArrayList<>(counts.keySet());
+            jobs.sort((a, b) -> counts.get(b) - counts.get(a));
+            return jobs;
+        }
+    }
+}
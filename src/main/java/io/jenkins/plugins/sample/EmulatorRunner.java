@@ -1,36 +1,113 @@
 package io.jenkins.plugins.sample;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.*;
 import hudson.model.Computer;
+import hudson.model.Node;
 import hudson.model.TaskListener;
 import io.jenkins.plugins.sample.cmd.*;
+import io.jenkins.plugins.sample.cmd.help.ADBClient;
 import io.jenkins.plugins.sample.cmd.help.Channel;
+import io.jenkins.plugins.sample.cmd.help.EmulatorConsoleClient;
+import io.jenkins.plugins.sample.cmd.help.EmulatorCrashDetector;
+import io.jenkins.plugins.sample.cmd.help.EmulatorLogSink;
 import io.jenkins.plugins.sample.cmd.help.ReceiveEmulatorPortTask;
 import io.jenkins.plugins.sample.cmd.model.ADBDevice;
 import io.jenkins.plugins.sample.cmd.model.AVDevice;
 import io.jenkins.plugins.sample.cmd.model.EmulatorConfig;
+import io.jenkins.plugins.sample.cmd.model.EmulatorDemand;
 import io.jenkins.plugins.sample.cmd.model.SDKPackages;
+import io.jenkins.plugins.sample.sdk.InstalledPackagesTask;
+import io.jenkins.plugins.sample.sdk.SDKArchiveCache;
+import io.jenkins.plugins.sample.sdk.SDKPackagesCache;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
-import org.jvnet.hudson.plugins.port_allocator.PortAllocationManager;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class EmulatorRunner {
 
+    static final String ENV_BUILD_ID = "BUILD_ID";
+    static final String ENV_JENKINS_NODE_COOKIE = "JENKINS_NODE_COOKIE";
+    static final String DONT_KILL_ME = "dontKillMe";
+
+    // seconds the setup steps still running are given to stop when the boot fails
+    private static final long STEPS_STOP_TIMEOUT = 60;
+
     private final EmulatorConfig config;
+    private final EmulatorBootMetrics metrics = new EmulatorBootMetrics();
+    private String configHash;
+    private EmulatorLogSink emulatorLog;
+    // the setup steps started by the last run
+    private final List<Step<?>> steps = new ArrayList<>();
 
     @SuppressFBWarnings(value = "EI_EXPOSE_REP2")
     public EmulatorRunner(@NonNull EmulatorConfig config) {
         this.config = config;
     }
 
-    public void run(@NonNull FilePath workspace,
+    /**
+     * Enables the reuse of booted emulators through the {@link EmulatorPool}.
+     *
+     * @param configHash hash of the emulator configuration, {@code null} to
+     *        always boot a new emulator that will be killed at the end of the build
+     */
+    public void setConfigHash(@Nullable String configHash) {
+        this.configHash = configHash;
+    }
+
+    /**
+     * @param emulatorLog keeps the output of the emulator on its node, and streams it to the build
+     *        log while it boots, when it is not a pooled emulator
+     */
+    public void setEmulatorLog(@Nullable EmulatorLogSink emulatorLog) {
+        this.emulatorLog = emulatorLog;
+    }
+
+    /**
+     * @return the time spent in each phase of the last {@link #run}
+     */
+    @NonNull
+    public EmulatorBootMetrics getBootMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Boots the configured emulator, or leases an already booted one from the
+     * {@link EmulatorPool} when a configuration hash is set.
+     *
+     * @return the pooled emulator leased by this build, {@code null} if the
+     *         emulator is not managed by the pool
+     */
+    @CheckForNull
+    public EmulatorPool.PooledEmulator run(@NonNull FilePath workspace,
+                    @NonNull TaskListener listener,
+                    @Nullable EnvVars env) throws IOException, InterruptedException {
+        steps.clear();
+        boolean booted = false;
+        try {
+            EmulatorPool.PooledEmulator pooled = boot(workspace, listener, env);
+            booted = true;
+            return pooled;
+        } finally {
+            if (!booted) {
+                // no setup step may outlive a failed boot, eg: an ADB lease taken after the build released its leases
+                stopSteps(workspace, listener);
+            }
+        }
+    }
+
+    @CheckForNull
+    private EmulatorPool.PooledEmulator boot(@NonNull FilePath workspace,
                     @NonNull TaskListener listener,
                     @Nullable EnvVars env) throws IOException, InterruptedException {
         Launcher launcher = workspace.createLauncher(listener);
@@ -47,140 +124,493 @@ public class EmulatorRunner {
             avdHome = Constants.DIR_AVD_HOME;
         }
 
-        // 通过 sdkmanager --list 获取已安装的 sdk 列表
-        SDKPackages packages = SDKManagerCLIBuilder.withSDKRoot(sdkRoot)
-            .createExecutable(launcher, workspace)
-            .setChannel(Channel.STABLE)
-            .setProxy(proxy)
-            .list()
-            .withEnv(env)
-            .execute();
-        listener.getLogger().println("SDK Manager is reading installed components");
+        EmulatorPool pool = EmulatorPool.get();
+        Computer computer = workspace.toComputer();
+        String nodeName = computer != null ? computer.getName() : null;
+        if (nodeName == null) {
+            configHash = null;
+        }
+        metrics.setNode(nodeName);
+
+        if (configHash != null) {
+            EmulatorPool.PooledEmulator pooled = pool.lease(nodeName, configHash);
+            if (pooled != null) {
+                config.setEmulatorConsolePort(pooled.getConsolePort());
+                config.setEmulatorADBConnectPort(pooled.getAdbConnectPort());
+                if (isEmulatorReady(workspace)) {
+                    listener.getLogger().println("Reusing the already booted emulator " + pooled.getSerial());
+                    metrics.setReused(true);
+                    return pooled;
+                }
+                listener.getLogger().println("Pooled emulator " + pooled.getSerial() + " does not respond anymore, booting a new one");
+                pool.discard(pooled);
+                killEmulator(workspace, listener, pooled.getConsolePort());
+            }
+        }
+
+        // idle emulators of the pool must not hold the ports or the AVD we are going to use
+        if (nodeName != null) {
+            for (EmulatorPool.PooledEmulator idle : pool.evictIdle(nodeName, e -> e.getConsolePort() == config.getEmulatorConsolePort()
+                    || e.getAdbConnectPort() == config.getEmulatorADBConnectPort()
+                    || e.getAvdName().equals(config.getEmulatorName()))) {
+                listener.getLogger().println("Shutting down the idle emulator " + idle.getSerial());
+                killEmulator(workspace, listener, idle.getConsolePort());
+            }
+        }
+
+        // make room for the new emulator, idle emulators of the pool are shut down first, least recently used first
+        Node node = computer != null ? computer.getNode() : null;
+        EmulatorNodeProperty capacity = node != null ? node.getNodeProperties().get(EmulatorNodeProperty.class) : null;
+        if (capacity != null) {
+            List<EmulatorPool.PooledEmulator> idleEmulators = new ArrayList<>();
+            EmulatorDemand total = TaskDispatcher.getRunningDemand(node, computer);
+            for (EmulatorPool.PooledEmulator emulator : pool.getEmulators(nodeName)) {
+                if (!emulator.isLeased()) {
+                    idleEmulators.add(emulator);
+                    total = total.plus(emulator.getDemand());
+                }
+            }
+            idleEmulators.sort(Comparator.comparingLong(EmulatorPool.PooledEmulator::getLastUsed));
+            for (EmulatorPool.PooledEmulator emulator : idleEmulators) {
+                if (capacity.exceeds(total) == null) {
+                    break;
+                }
+                for (EmulatorPool.PooledEmulator idle : pool.evictIdle(nodeName, e -> e == emulator)) {
+                    listener.getLogger().println("Shutting down the idle emulator " + idle.getSerial() + " to make room on the node");
+                    killEmulator(workspace, listener, idle.getConsolePort());
+                    total = total.minus(idle.getDemand());
+                }
+            }
+        }
+
+        // the setup steps run in parallel when they do not depend on each other:
+        //   SDK list -> SDK install ---------------------\
+        //   AVD fingerprint -> AVD list -> AVD delete -----> AVD create -> config file --\
+        //   adb server start ------------------------------------------------------------> emulator
+        final String sdkRootPath = sdkRoot;
+        final EnvVars setupEnv = env;
+
+        // the ADB server of the node is shared with the other emulators, it is only started if it does not answer
+        CompletableFuture<Void> adbServer = async(true, () -> {
+            long started = System.nanoTime();
+            if (computer != null) {
+                ADBServerManager.get().acquire(computer, config.getEmulatorConsolePort(), config.getAdbServerPort(),
+                        launcher, workspace, sdkRootPath, setupEnv);
+            } else {
+                ADBServerManager.start(launcher, workspace, sdkRootPath, setupEnv, config.getAdbServerPort());
+            }
+            metrics.record(EmulatorBootMetrics.Phase.ADB_START, started);
+            return null;
+        });
+
+        // 获取已安装的 sdk 列表，安装缺少的组件
+        CompletableFuture<SDKPackages> sdkPackages = async(() -> installComponents(launcher, workspace, listener, sdkRootPath, setupEnv, proxy));
+
+        // an AVD created with the same settings can be booted as is
+        FilePath avdHomePath = new FilePath(launcher.getChannel(), avdHome);
+        FilePath avdPath = avdHomePath.child(config.getEmulatorName() + ".avd");
+        AVDFingerprint fingerprint = new AVDFingerprint(config, getSystemComponent());
+        boolean avdMatches = fingerprint.matches(avdPath);
+
+        // 查看已经存在的模拟器列表，删除配置不一致的模拟器
+        CompletableFuture<Void> avdRemoval = avdMatches
+                ? CompletableFuture.completedFuture(null)
+                : async(() -> removeAVD(launcher, workspace, listener, sdkRootPath, setupEnv));
+
+        // a valid golden snapshot lives inside the AVD folder, the AVD must be kept as is
+        SDKPackages packages = await(sdkPackages);
+        String systemImage = getSystemImageRevision(packages);
+        boolean quickBoot = false;
+        if (config.isUseSnapshots()) {
+            quickBoot = avdMatches && GoldenSnapshot.isValid(avdHomePath, config.getEmulatorName(), systemImage);
+        }
+
+        if (quickBoot) {
+            listener.getLogger().println("Android Virtual Device " + config.getEmulatorName() + " has a golden snapshot, boot from "
+                    + Constants.GOLDEN_SNAPSHOT_NAME);
+        } else if (avdMatches) {
+            listener.getLogger().println("Android Virtual Device " + config.getEmulatorName() + " already matches the configuration "
+                    + fingerprint.getValue() + ", reusing it");
+        } else {
+            await(avdRemoval);
+
+            long started = System.nanoTime();
+            // avdmanager creates the AVD with its default device definition
+            AVDTemplate template = AVDTemplate.of(computer, fingerprint, systemImage, null);
+            if (template != null && template.cloneTo(avdHomePath, config.getEmulatorName())) {
+                listener.getLogger().println("Android Virtual Device " + config.getEmulatorName() + " cloned from the template "
+                        + fingerprint.getValue());
+            } else {
+                // create new device
+                listener.getLogger().println("AVD Manager is creating a new device named " + config.getEmulatorName() + " using sysimage "
+                        + getSystemComponent());
+
+                // the SD card is not created by avdmanager, it would write the whole image
+                AVDManagerCLIBuilder.withSdkRoot(sdkRoot)
+                        .createExecutable(launcher, workspace)
+                        .silent(true)
+                        .packagePath(getSystemComponent())
+                        .createAVD(config)
+                        .withEnv(env)
+                        .execute();
+                if (Util.fixEmptyAndTrim(config.getSdCardSize()) != null) {
+                    SDCardImage.create(computer, avdPath, Integer.parseInt(config.getSdCardSize().trim()));
+                }
+
+                // store screen and hardware settings, they are part of the fingerprint
+                fingerprint.apply(avdPath);
+                if (template != null) {
+                    // before the first boot, the template must not carry any userdata
+                    template.store(avdHomePath, config.getEmulatorName());
+                }
+            }
+            metrics.record(EmulatorBootMetrics.Phase.AVD_CREATE, started);
+        }
+
+        // create AVD descriptor file, while the emulator command is prepared
+        CompletableFuture<Void> configFile = async(() -> {
+            long started = System.nanoTime();
+            writeConfigFile(avdHomePath);
+            metrics.record(EmulatorBootMetrics.Phase.WRITE_CONFIG, started);
+            return null;
+        });
+
+        // start emulator
+        long started = System.nanoTime();
+        ChristelleCLICommand<Void> emulatorCommand = EmulatorManagerCLIBuilder.withSdkRoot(sdkRoot)
+                .createExecutable(launcher, workspace)
+                .setDataDir(avdHome)
+                .setEmulatorConfig(config)
+                .setMode(EmulatorManagerCLIBuilder.SNAPSHOT.NOT_PERSIST)
+                .setSnapshot(quickBoot ? Constants.GOLDEN_SNAPSHOT_NAME : null)
+                .start(listener)
+                .withEnv(env);
+        await(configFile);
+        await(adbServer);
+        // the output of the emulator tells why it crashed, if it does before the end of the boot
+        EmulatorCrashDetector crashDetector;
+        if (configHash != null) {
+            // a pooled emulator outlives the build, keep the process tree killer away from it
+            // and do not bind its output to the log of this build
+            crashDetector = new EmulatorCrashDetector(OutputStream.nullOutputStream());
+            emulatorCommand.withEnv(ENV_BUILD_ID, DONT_KILL_ME)
+                    .withEnv(ENV_JENKINS_NODE_COOKIE, DONT_KILL_ME);
+        } else {
+            crashDetector = new EmulatorCrashDetector(listener.getLogger());
+        }
+        if (configHash == null && emulatorLog != null) {
+            // the output kept on the node explains the crash, the lines the console drops do not matter
+            crashDetector.watch(emulatorCommand.executeAsync(emulatorLog, listener.getLogger(), launcher), emulatorLog);
+        } else {
+            crashDetector.watch(emulatorCommand.executeAsync(crashDetector, launcher));
+        }
+        metrics.record(EmulatorBootMetrics.Phase.EMULATOR_SPAWN, started);
+
+        started = System.nanoTime();
+        int port = ReceiveEmulatorPortTask.receive(workspace.getChannel(), config.getEmulatorReportConsolePort(),
+                config.getEmulatorConnectToAdbTimeout(), crashDetector);
+        metrics.record(EmulatorBootMetrics.Phase.REPORT_CONSOLE, started);
+        if (port <= 0) {
+            throw new IOException(Messages.EMULATOR_DID_NOT_START()); // FIXME
+        }
 
-        for (String s : getComponents()) {
-            System.out.println("package: " + s + "\n");
+        // emulator devices
+        try {
+            for (ADBDevice device : workspace.act(new ADBClient.DevicesTask(config.getAdbServerPort()))) {
+                listener.getLogger().println(device.getEmulatorName() + "\t" + device.getStatus());
+            }
+        } catch (IOException e) {
+            listener.getLogger().println("Unable to list the devices attached to adb: " + e.getMessage());
         }
+        listener.getLogger().println("waiting to emulator connect to adb port: " + port + " successfully");
+
+        started = System.nanoTime();
+        waitForEmulatorToBeReady(workspace, listener, crashDetector);
+        metrics.record(EmulatorBootMetrics.Phase.BOOT_WAIT, started);
+        metrics.setQuickBoot(quickBoot);
+
+        if (config.isUseSnapshots() && !quickBoot && systemImage != null) {
+            started = System.nanoTime();
+            quickBoot = saveGoldenSnapshot(launcher, workspace, listener, sdkRoot, env, avdHomePath, systemImage);
+            metrics.record(EmulatorBootMetrics.Phase.SNAPSHOT_SAVE, started);
+        }
+
+        // without a snapshot nothing brings the emulator back to a clean state, the apps and the
+        // data of this build would leak into the next one
+        if (configHash != null && quickBoot) {
+            return pool.register(nodeName, configHash, config, Constants.GOLDEN_SNAPSHOT_NAME);
+        }
+        return null;
+    }
+
+    // reads the installed SDK packages and installs the missing components
+    private SDKPackages installComponents(Launcher launcher, FilePath workspace, TaskListener listener, String sdkRoot, EnvVars env,
+                                          ProxyConfiguration proxy) throws IOException, InterruptedException {
+        listener.getLogger().println("Reading installed SDK components");
+        long started = System.nanoTime();
+        SDKPackages packages = listInstalledPackages(launcher, workspace, sdkRoot, env, proxy);
+        metrics.record(EmulatorBootMetrics.Phase.SDK_LIST, started);
+
         // 在已安装列表中是否已存在用户所需要的版本，如 android-30
         Set<String> components = getComponents();
         packages.getInstalled().forEach(p -> components.remove(p.getId()));
-        if (!components.isEmpty()) {
-            SDKManagerCLIBuilder.withSDKRoot(sdkRoot)
-                    .createExecutable(launcher, workspace)
-                    .setProxy(proxy)
-                    .installSDK(components)
-                    .withEnv(env)
-                    .execute();
-            listener.getLogger().println("SDK Manager is installing " + StringUtils.join(components, ' '));
+        if (components.isEmpty()) {
+            return packages;
+        }
+
+        listener.getLogger().println("SDK Manager is installing " + StringUtils.join(components, ' '));
+        started = System.nanoTime();
+        SDKArchiveCache.Installer installer = missing -> SDKManagerCLIBuilder.withSDKRoot(sdkRoot)
+                .createExecutable(launcher, workspace)
+                .setProxy(proxy)
+                .installSDK(missing)
+                .withEnv(env)
+                .execute();
+        if (sdkRoot != null) {
+            FilePath sdkRootPath = new FilePath(launcher.getChannel(), sdkRoot);
+            SDKArchiveCache.install(sdkRootPath, components, installer, listener);
+            SDKPackagesCache.invalidate(sdkRootPath);
+        } else {
+            installer.install(components);
         }
+        metrics.record(EmulatorBootMetrics.Phase.SDK_INSTALL, started);
+
+        // the packages listed before are stale, the revision of the system image just installed
+        // identifies the templates of the AVD
+        started = System.nanoTime();
+        packages = listInstalledPackages(launcher, workspace, sdkRoot, env, proxy);
+        metrics.record(EmulatorBootMetrics.Phase.SDK_LIST, started);
+        return packages;
+    }
 
-        // 查看已经存在的模拟器列表
+    // deletes the AVD with the name of the emulator, if any
+    private Void removeAVD(Launcher launcher, FilePath workspace, TaskListener listener, String sdkRoot, EnvVars env)
+            throws IOException, InterruptedException {
+        long started = System.nanoTime();
         List<AVDevice> devices = AVDManagerCLIBuilder.withSdkRoot(sdkRoot)
                 .createExecutable(launcher, workspace)
                 .silent(true)
                 .listAVD()
                 .withEnv(env)
                 .execute();
+        metrics.record(EmulatorBootMetrics.Phase.AVD_LIST, started);
 
         if (devices.stream().anyMatch(d -> config.getEmulatorName().equals(d.getName()))) {
-            listener.getLogger().println("Android Virtual Device " + config.getEmulatorName() + " already exist, removing...");
-
+            listener.getLogger().println("Android Virtual Device " + config.getEmulatorName() + " does not match the configuration, removing...");
+            started = System.nanoTime();
             AVDManagerCLIBuilder.withSdkRoot(sdkRoot)
                     .createExecutable(launcher, workspace)
                     .silent(true)
                     .deleteAVD(config.getEmulatorName())
                     .withEnv(env)
                     .execute();
+            metrics.record(EmulatorBootMetrics.Phase.AVD_DELETE, started);
         }
+        return null;
+    }
 
-        // create new device
-        listener.getLogger().println("AVD Manager is creating a new device named " + config.getEmulatorName() + " using sysimage "
-                + getSystemComponent());
+    /**
+     * A step of the setup, run by {@link #async}.
+     */
+    private interface SetupStep<T> {
+        T run() throws IOException, InterruptedException;
+    }
 
-        AVDManagerCLIBuilder.withSdkRoot(sdkRoot)
-                .createExecutable(launcher, workspace)
-                .silent(true)
-                .packagePath(getSystemComponent())
-                .createAVD(config)
-                .withEnv(env)
-                .execute();
+    private <T> CompletableFuture<T> async(SetupStep<T> body) {
+        return async(false, body);
+    }
 
-        // create AVD descriptor file
-        writeConfigFile(new FilePath(launcher.getChannel(), avdHome));
+    /**
+     * @param leasesADB whether the step leases the ADB server of the node, the lease is released if
+     *        the boot fails
+     */
+    private <T> CompletableFuture<T> async(boolean leasesADB, SetupStep<T> body) {
+        Step<T> step = new Step<>(body, leasesADB);
+        steps.add(step);
+        Computer.threadPoolForRemoting.submit(step);
+        return step.result;
+    }
 
-        // start ADB service
-        ADBManagerCLIBuilder.withSDKRoot(sdkRoot)
-                .createExecutable(launcher, workspace)
-                .setMaxEmulators(1)
-                .setPort(config.getAdbServerPort())
-                .start()
-                .withEnv(env)
-                .execute();
+    // interrupts the setup steps still running, waits for them to stop and gives back the ADB lease taken by them
+    private void stopSteps(FilePath workspace, TaskListener listener) {
+        for (Step<?> step : steps) {
+            step.cancel();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STEPS_STOP_TIMEOUT);
+        boolean interrupted = false;
+        Computer computer = workspace.toComputer();
+        for (Step<?> step : steps) {
+            while (true) {
+                try {
+                    step.result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (step.leasesADB && computer != null) {
+                        ADBServerManager.get().release(computer, config.getEmulatorConsolePort());
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    // the build is aborted, the steps must stop all the same
+                    interrupted = true;
+                } catch (TimeoutException e) {
+                    listener.getLogger().println("A setup step of the emulator did not stop in time");
+                    break;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+        steps.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        // start emulator
-        EmulatorManagerCLIBuilder.withSdkRoot(sdkRoot)
-                .createExecutable(launcher, workspace)
-                .setDataDir(avdHome)
-                .setEmulatorConfig(config)
-                .setMode(EmulatorManagerCLIBuilder.SNAPSHOT.NOT_PERSIST)
-                .start(listener)
-                .withEnv(env)
-                .executeAsync(listener);
+    /**
+     * A setup step running on {@link Computer#threadPoolForRemoting}, that can be interrupted.
+     */
+    private static final class Step<T> implements Runnable {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final boolean leasesADB;
+        private final SetupStep<T> body;
+        private Thread thread;
+        private boolean cancelled;
+
+        Step(SetupStep<T> body, boolean leasesADB) {
+            this.body = body;
+            this.leasesADB = leasesADB;
+        }
 
-        Integer port = workspace.act(new ReceiveEmulatorPortTask(config.getEmulatorReportConsolePort(), config.getEmulatorConnectToAdbTimeout()));
-        if (port <= 0) {
-            throw new IOException(Messages.EMULATOR_DID_NOT_START()); // FIXME
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (cancelled) {
+                    result.cancel(false);
+                    return;
+                }
+                thread = Thread.currentThread();
+            }
+            try {
+                result.complete(body.run());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                synchronized (this) {
+                    thread = null;
+                    // an interrupt sent once the step is over must not reach the next task of the pool
+                    Thread.interrupted();
+                }
+            }
         }
 
-        // emulator devices
-        ADBManagerCLIBuilder.withSDKRoot(sdkRoot)
-                .createExecutable(launcher, workspace)
-                .setMaxEmulators(1)
-                .setPort(config.getAdbServerPort())
-                .listEmulatorDevices()
-                .withEnv(env)
-                .executeAsync(listener);
-        listener.getLogger().println("waiting to emulator connect to adb port: " + port + " successfully");
+        synchronized void cancel() {
+            cancelled = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
 
-        waitForEmulatorToBeReady(launcher, workspace, listener, sdkRoot, env);
+    // waits for a step and rethrows its failure as is
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
 
+    // the installed packages are read from their package.xml, sdkmanager is only launched to install the missing ones
+    private SDKPackages listInstalledPackages(Launcher launcher, FilePath workspace, String sdkRoot, EnvVars env, ProxyConfiguration proxy)
+            throws IOException, InterruptedException {
+        if (sdkRoot == null) {
+            return SDKManagerCLIBuilder.withSDKRoot(sdkRoot)
+                    .createExecutable(launcher, workspace)
+                    .setChannel(Channel.STABLE)
+                    .setProxy(proxy)
+                    .listInstalled()
+                    .withEnv(env)
+                    .execute();
+        }
+        return new FilePath(launcher.getChannel(), sdkRoot).act(new InstalledPackagesTask());
     }
 
-    private void waitForEmulatorToBeReady(Launcher launcher, FilePath workspace, TaskListener listener, String sdkRoot, EnvVars env) throws InterruptedException, IOException {
-        int maxAttempts = 30;
-        int attempt = 0;
-        boolean isBooted = false;
-        boolean isDeviceOnline = false;
-        // wait for emulator
-        String emulatorName = Constants.EMULATOR_NAME_PREFIX + config.getEmulatorConsolePort();
+    private boolean saveGoldenSnapshot(Launcher launcher, FilePath workspace, TaskListener listener, String sdkRoot, EnvVars env,
+                                       FilePath avdHome, String systemImage) throws InterruptedException {
+        listener.getLogger().println("Saving snapshot " + Constants.GOLDEN_SNAPSHOT_NAME + " of " + config.getEmulatorName());
+        try {
+            workspace.act(EmulatorConsoleClient.CommandTask.saveSnapshot(config.getEmulatorConsolePort(), Constants.GOLDEN_SNAPSHOT_NAME));
+            GoldenSnapshot.markSaved(avdHome, config.getEmulatorName(), systemImage);
+            return true;
+        } catch (IOException e) {
+            // next build will cold boot and try again
+            listener.getLogger().println("Unable to save snapshot " + Constants.GOLDEN_SNAPSHOT_NAME + ": " + e.getMessage());
+            return false;
+        }
+    }
 
-        ADBManagerCLIBuilder adbManagerCLIBuilder = ADBManagerCLIBuilder
-                .withSDKRoot(sdkRoot)
-                .setSerial(emulatorName)
-                .createExecutable(launcher, workspace);
-        ChristelleCLICommand<Boolean> emulatorIsBooted = adbManagerCLIBuilder.emulatorIsBooted().withEnv(env);
-        ChristelleCLICommand<List<ADBDevice>> emulatorDevicesCommand = adbManagerCLIBuilder.listEmulatorDevices().withEnv(env);
-        while (attempt < maxAttempts && (!isBooted || !isDeviceOnline)) {
+    // identifier and revision of the installed system image, eg: system-images;android-30;default;x86_64@3.0.0
+    @CheckForNull
+    private String getSystemImageRevision(SDKPackages packages) {
+        String systemComponent = getSystemComponent();
+        for (SDKPackages.SDKPackage p : packages.getInstalled()) {
+            if (systemComponent.equals(p.getId()) && p.getVersion() != null) {
+                return systemComponent + "@" + p.getVersion();
+            }
+        }
+        return null;
+    }
 
-            try {
-                isBooted = emulatorIsBooted.executeAsyncReturnData(listener, launcher);
-                listener.getLogger().println("Checking emulator status, attempt isBooted: " + isBooted);
-                List<ADBDevice> adbDevices = emulatorDevicesCommand.executeAsyncReturnData(listener, launcher);
-                for (ADBDevice adbDevice : adbDevices) {
-                    if (adbDevice.getEmulatorName().equals(emulatorName) && adbDevice.getStatus().equals("device")) {
-                        isDeviceOnline = true;
-                        break;
-                    }
-                }
-            }catch (IOException e) {
+    private boolean isEmulatorReady(FilePath workspace) throws InterruptedException {
+        String emulatorName = Constants.EMULATOR_NAME_PREFIX + config.getEmulatorConsolePort();
+        try {
+            if (!"device".equals(workspace.act(new ADBClient.GetStateTask(config.getAdbServerPort(), emulatorName)))) {
+                return false;
             }
+            String isBooted = workspace.act(new ADBClient.ShellTask(config.getAdbServerPort(), emulatorName, "getprop sys.boot_completed"));
+            return "1".equals(isBooted.trim());
+        } catch (IOException e) {
+            return false;
+        }
+    }
 
-            if (!isBooted || !isDeviceOnline) {
-                Thread.sleep(3000); // Wait for 3 seconds before next check
-                attempt++;
+    // adb emu kill goes through the same console, there is nothing else to try when it does not answer
+    private void killEmulator(FilePath workspace, TaskListener listener, int consolePort) throws InterruptedException {
+        try {
+            workspace.act(EmulatorConsoleClient.CommandTask.kill(consolePort));
+        } catch (IOException e) {
+            listener.getLogger().println("Unable to kill " + Constants.EMULATOR_NAME_PREFIX + consolePort + ": " + e.getMessage());
+        } finally {
+            Computer computer = workspace.toComputer();
+            if (computer != null) {
+                ADBServerManager.get().release(computer, consolePort);
             }
-            listener.getLogger().println(" ...wait...");
         }
-        if (!isBooted || !isDeviceOnline) {
+    }
+
+    private void waitForEmulatorToBeReady(FilePath workspace, TaskListener listener, EmulatorCrashDetector crashDetector) throws InterruptedException, IOException {
+        // wait for emulator, the ADB server of the node is queried directly and returns as soon as the device is online and booted
+        String emulatorName = Constants.EMULATOR_NAME_PREFIX + config.getEmulatorConsolePort();
+        listener.getLogger().println("Waiting for " + emulatorName + " to complete the boot");
+
+        boolean isBooted;
+        try {
+            isBooted = crashDetector.await(workspace.getChannel().callAsync(
+                    new ADBClient.WaitForBootTask(config.getAdbServerPort(), emulatorName, Constants.BOOT_COMPLETE_TIMEOUT_MS)));
+        } catch (EmulatorCrashException e) {
+            throw e;
+        } catch (IOException e) {
+            isBooted = false;
+        }
+        if (!isBooted) {
             throw new IOException("Emulator did not start or connect to ADB in the given time.");
         }
         listener.getLogger().println("Emulator had Ready !!!");
@@ -217,15 +647,4 @@ public class EmulatorRunner {
         return StringUtils.join(parts, ';');
     }
 
-    private void cleanupPort() {
-        final Computer computer = Computer.currentComputer();
-        PortAllocationManager portAllocator = PortAllocationManager.getManager(computer);
-        if (portAllocator != null) {
-            portAllocator.free(config.getAdbServerPort());
-            portAllocator.free(config.getEmulatorConsolePort());
-            portAllocator.free(config.getEmulatorReportConsolePort());
-            portAllocator.free(config.getEmulatorADBConnectPort());
-        }
-    }
-
 }
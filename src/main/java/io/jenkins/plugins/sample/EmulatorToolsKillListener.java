@@ -5,64 +5,169 @@ import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.model.Computer;
 import hudson.model.Node;
+import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
 import hudson.remoting.VirtualChannel;
-import io.jenkins.plugins.sample.cmd.ADBManagerCLIBuilder;
+import io.jenkins.plugins.sample.cmd.help.ADBClient;
+import io.jenkins.plugins.sample.cmd.help.EmulatorConsoleClient;
+import io.jenkins.plugins.sample.cmd.help.EmulatorLogSink;
 import io.jenkins.plugins.sample.cmd.help.Platform;
 import io.jenkins.plugins.sample.cmd.model.AndroidEmulatorShareDataAction;
 import jenkins.model.Jenkins;
 
 import java.io.IOException;
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 @Extension
 public class EmulatorToolsKillListener extends RunListener<Run<?, ?>> {
+    private static final Logger LOGGER = Logger.getLogger(EmulatorToolsKillListener.class.getName());
 
     @Override
     public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
         listener.getLogger().println("RunListener onCompleted");
-        AndroidEmulatorShareDataAction shareDataAction = run.getAction(AndroidEmulatorShareDataAction.class);
-        if (shareDataAction == null) {
-            System.out.println("shareDataAction is null");
+        // one action per emulator started by the build, a pipeline may start several
+        List<AndroidEmulatorShareDataAction> shareDataActions = run.getActions(AndroidEmulatorShareDataAction.class);
+        if (shareDataActions.isEmpty()) {
             return;
         }
+        // the output of the emulators must not stay in memory with the build
+        Map<AndroidEmulatorShareDataAction, EmulatorLogSink> emulatorLogs = new HashMap<>();
+        // the emulators of a pipeline may run on several nodes, the executor of a completed build does not tell which
+        Map<String, List<AndroidEmulatorShareDataAction>> nodes = new LinkedHashMap<>();
+        for (AndroidEmulatorShareDataAction shareDataAction : shareDataActions) {
+            emulatorLogs.put(shareDataAction, shareDataAction.getEmulatorLog());
+            shareDataAction.setEmulatorLog(null);
+            if (shareDataAction.getNodeName() != null) {
+                nodes.computeIfAbsent(shareDataAction.getNodeName(), k -> new ArrayList<>()).add(shareDataAction);
+            }
+        }
 
-        String emulatorPort = String.valueOf(shareDataAction.getEmulatorConsolePort());
-        Node node = Objects.requireNonNull(run.getExecutor()).getOwner().getNode();
-        try {
-            EnvVars envVars = run.getEnvironment(listener);
-            String sdkRoot = envVars.get(Constants.ENV_VAR_ANDROID_SDK_ROOT);
-            FilePath filePath = null;
-            VirtualChannel channel = null;
-            Platform platform = null;
-            if (node != null) {
-                System.out.println("node is not null");
-                channel = node.getChannel();
-                filePath = new FilePath(channel, sdkRoot);
-                platform = Platform.fromWorkspace(filePath);
+        for (Map.Entry<String, List<AndroidEmulatorShareDataAction>> entry : nodes.entrySet()) {
+            String nodeName = entry.getKey();
+            Computer computer = nodeName.isEmpty() ? Jenkins.get().toComputer() : Jenkins.get().getComputer(nodeName);
+            if (computer == null) {
+                LOGGER.fine(() -> "Node " + nodeName + " is gone, the emulators of " + run + " are left running");
+                continue;
             }
-            if (channel == null) {
-                System.out.println("channel is null");
+            try {
+                tearDown(run, computer, entry.getValue(), emulatorLogs, listener);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to shut down the emulators of " + run + " on " + computer.getName(), e);
+                listener.getLogger().println("Unable to shut down the emulators on " + computer.getDisplayName() + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.log(Level.WARNING, "Interrupted while shutting down the emulators of " + run, e);
                 return;
             }
-            Launcher launcher = new Launcher.RemoteLauncher(listener, channel, platform == Platform.LINUX);
-            ADBManagerCLIBuilder adbManagerCLIBuilder = ADBManagerCLIBuilder.withSDKRoot(sdkRoot)
-                    .createExecutable(launcher, filePath);
-
-            // 关闭 emulator
-            adbManagerCLIBuilder.killEmulatorByPort(emulatorPort).withEnv(envVars).execute();
-            // 关闭 adb server
-            adbManagerCLIBuilder.stop().withEnv(envVars);
-            listener.getLogger().println("killServiceAfterBuild tearDown");
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
         }
         super.onCompleted(run, listener);
     }
 
+    // hands the emulators of the build on the node back to the pool, shuts down the others
+    private void tearDown(Run<?, ?> run, Computer computer, List<AndroidEmulatorShareDataAction> shareDataActions,
+                          Map<AndroidEmulatorShareDataAction, EmulatorLogSink> emulatorLogs, TaskListener listener)
+            throws IOException, InterruptedException {
+        Node node = computer.getNode();
+        EnvVars envVars = run.getEnvironment(listener);
+        String sdkRoot = envVars.get(Constants.ENV_VAR_ANDROID_SDK_ROOT);
+        FilePath filePath = null;
+        VirtualChannel channel = null;
+        Platform platform = null;
+        if (node != null) {
+            channel = node.getChannel();
+            filePath = new FilePath(channel, sdkRoot);
+            platform = Platform.fromWorkspace(filePath);
+        }
+        if (channel == null) {
+            LOGGER.fine(() -> "No channel to " + computer.getName() + ", the emulators of " + run + " are left running");
+            return;
+        }
+        Launcher launcher = new Launcher.RemoteLauncher(listener, channel, platform == Platform.LINUX);
+
+        // 归还 emulator 到 pool，只有在 build 正常结束时才复用
+        EmulatorPool pool = EmulatorPool.get();
+        List<AndroidEmulatorShareDataAction> toShutdown = new ArrayList<>();
+        for (AndroidEmulatorShareDataAction shareDataAction : shareDataActions) {
+            EmulatorPool.PooledEmulator pooled = null;
+            if (shareDataAction.isPooled()) {
+                pooled = pool.find(computer.getName(), shareDataAction.getEmulatorConsolePort());
+            }
+            if (pooled != null) {
+                Result result = run.getResult();
+                if (result != null && result.isBetterOrEqualTo(Result.UNSTABLE) && resetEmulator(channel, pooled, listener)) {
+                    pool.release(pooled);
+                    // the console connection of this build is not needed anymore
+                    channel.call(new EmulatorConsoleClient.CloseTask(pooled.getConsolePort()));
+                    listener.getLogger().println("Emulator " + pooled.getSerial() + " handed back to the pool");
+                    continue;
+                }
+                pool.discard(pooled);
+            }
+            toShutdown.add(shareDataAction);
+        }
+        if (toShutdown.isEmpty()) {
+            return;
+        }
+
+        // 关闭 emulator, all at once through their console, those that do not exit in time are killed
+        int[] ports = toShutdown.stream().mapToInt(AndroidEmulatorShareDataAction::getEmulatorConsolePort).toArray();
+        List<Integer> killed = channel.call(new EmulatorConsoleClient.ShutdownTask(EmulatorConsoleClient.SHUTDOWN_TIMEOUT_MS, ports));
+        for (int port : killed) {
+            listener.getLogger().println("Emulator " + Constants.EMULATOR_NAME_PREFIX + port + " did not shut down in time, killed");
+        }
+        for (AndroidEmulatorShareDataAction shareDataAction : toShutdown) {
+            // the ADB server of the node keeps serving the emulators of the other builds
+            ADBServerManager.get().release(computer, shareDataAction.getEmulatorConsolePort());
+            archiveEmulatorLog(run, shareDataAction.getEmulatorConsolePort(), emulatorLogs.get(shareDataAction), node, launcher, listener);
+        }
+        listener.getLogger().println("killServiceAfterBuild tearDown");
+    }
+
+    // the output of a killed emulator is only worth keeping when the build failed
+    private void archiveEmulatorLog(Run<?, ?> run, int consolePort, EmulatorLogSink emulatorLog, Node node,
+                                    Launcher launcher, TaskListener listener) throws InterruptedException {
+        if (emulatorLog == null) {
+            return;
+        }
+        Result result = run.getResult();
+        FilePath nodeRoot = node != null ? node.getRootPath() : null;
+        try {
+            if (result != null && result.isWorseThan(Result.UNSTABLE) && nodeRoot != null) {
+                String name = Constants.EMULATOR_NAME_PREFIX + consolePort + ".log.gz";
+                emulatorLog.archive(run, nodeRoot.child("emulator-logs"), launcher, listener, name);
+                listener.getLogger().println("Emulator output archived as " + name);
+            }
+            emulatorLog.close();
+        } catch (IOException e) {
+            listener.getLogger().println("Unable to archive the emulator output: " + e.getMessage());
+        }
+    }
+
+    // bring the emulator back to a clean state for the next build, only a snapshot drops the apps and the data of the build
+    private boolean resetEmulator(VirtualChannel channel, EmulatorPool.PooledEmulator pooled, TaskListener listener) throws InterruptedException {
+        if (pooled.getSnapshot() == null) {
+            return false;
+        }
+        try {
+            channel.call(EmulatorConsoleClient.CommandTask.loadSnapshot(pooled.getConsolePort(), pooled.getSnapshot()));
+            channel.call(new ADBClient.ShellTask(pooled.getAdbServerPort(), pooled.getSerial(), "logcat -c"));
+            return true;
+        } catch (IOException e) {
+            listener.getLogger().println("Unable to reset emulator " + pooled.getSerial() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
     @Override
     public void onDeleted(Run<?, ?> run) {
         super.onDeleted(run);
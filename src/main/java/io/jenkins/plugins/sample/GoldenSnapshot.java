@@ -0,0 +1,73 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Bookkeeping of the "golden" snapshot that is saved once per AVD, right after
+ * its first cold boot has completed.
+ * <p>
+ * The emulator stores the snapshot inside the AVD folder. Next to it we write a
+ * descriptor with the revision of the system image the snapshot was taken on,
+ * so that an update of the system image invalidates the snapshot instead of
+ * restoring a state that does not match the image anymore.
+ */
+public final class GoldenSnapshot {
+
+    private static final String DESCRIPTOR = "jenkins-snapshot.properties";
+    private static final String KEY_NAME = "snapshot.name";
+    private static final String KEY_SYSTEM_IMAGE = "system.image";
+
+    private GoldenSnapshot() {
+        // default constructor
+    }
+
+    /**
+     * Checks if the AVD has a golden snapshot usable to quick boot the emulator.
+     *
+     * @param avdHome the folder that contains the AVDs
+     * @param avdName the name of the AVD
+     * @param systemImage identifier and revision of the system image installed
+     *        in the SDK, {@code null} if unknown
+     * @return {@code true} if the snapshot exists and it has been taken on the
+     *         given system image
+     */
+    public static boolean isValid(@NonNull FilePath avdHome, @NonNull String avdName, @CheckForNull String systemImage) throws IOException, InterruptedException {
+        FilePath descriptor = getDescriptor(avdHome, avdName);
+        FilePath snapshot = avdHome.child(avdName + ".avd").child("snapshots").child(Constants.GOLDEN_SNAPSHOT_NAME);
+        if (systemImage == null || !descriptor.exists() || !snapshot.exists()) {
+            return false;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream is = descriptor.read()) {
+            properties.load(is);
+        }
+        return Constants.GOLDEN_SNAPSHOT_NAME.equals(properties.getProperty(KEY_NAME))
+                && systemImage.equals(properties.getProperty(KEY_SYSTEM_IMAGE));
+    }
+
+    /**
+     * Records that the golden snapshot has been saved for the given system image.
+     */
+    public static void markSaved(@NonNull FilePath avdHome, @NonNull String avdName, @NonNull String systemImage) throws IOException, InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_NAME, Constants.GOLDEN_SNAPSHOT_NAME);
+        properties.setProperty(KEY_SYSTEM_IMAGE, systemImage);
+
+        StringWriter content = new StringWriter();
+        properties.store(content, null);
+        getDescriptor(avdHome, avdName).write(content.toString(), StandardCharsets.ISO_8859_1.name());
+    }
+
+    private static FilePath getDescriptor(FilePath avdHome, String avdName) {
+        return avdHome.child(avdName + ".avd").child(DESCRIPTOR);
+    }
+}
@@ -0,0 +1,217 @@
+package io.jenkins.plugins.sample;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * SD card images of the AVDs, formatted in FAT32 by the plugin the way {@code mksdcard} does,
+ * instead of having avdmanager write the whole image.
+ * <p>
+ * Only the boot sectors, the FS information sectors and the head of the two FATs are written, the
+ * rest of the image is a hole of a sparse file. A blank image of each size is kept on the node in
+ * {@code <node root>/sdcard-images} and cloned into the AVDs like an {@link AVDTemplate}.
+ */
+public final class SDCardImage {
+
+    /** Name of the SD card image that the emulator looks for in the AVD folder. */
+    public static final String FILE_NAME = "sdcard.img";
+
+    private static final String IMAGES = "sdcard-images";
+    private static final String CONFIG_INI = "config.ini";
+    private static final String KEY_SDCARD = "hw.sdCard";
+
+    private static final int SECTOR_SIZE = 512;
+    private static final int RESERVED_SECTORS = 32;
+    private static final int FAT_COUNT = 2;
+    private static final int FS_INFO_SECTOR = 1;
+    private static final int BACKUP_BOOT_SECTOR = 6;
+    private static final int ROOT_CLUSTER = 2;
+    private static final long MB = 1024L * 1024L;
+
+    private SDCardImage() {
+        // default constructor
+    }
+
+    /**
+     * Writes a blank SD card image in the AVD folder and enables the SD card in its
+     * {@code config.ini}.
+     *
+     * @param computer the node of the AVD, its blank images are reused when online
+     * @param avdPath the AVD folder, eg: ~/.android/avd/test.avd
+     * @param sizeMB size of the SD card in megabytes, at least 9 for FAT32
+     */
+    public static void create(@CheckForNull Computer computer, @NonNull FilePath avdPath, int sizeMB) throws IOException, InterruptedException {
+        Node node = computer != null ? computer.getNode() : null;
+        FilePath nodeRoot = node != null ? node.getRootPath() : null;
+        String blank = nodeRoot != null ? nodeRoot.child(IMAGES).child(sizeMB + "M.img").getRemote() : null;
+        avdPath.act(new CreateTask(blank, sizeMB));
+    }
+
+    private static final class CreateTask extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String blankPath;
+        private final int sizeMB;
+
+        CreateTask(@CheckForNull String blankPath, int sizeMB) {
+            this.blankPath = blankPath;
+            this.sizeMB = sizeMB;
+        }
+
+        @Override
+        public Void invoke(File avd, VirtualChannel channel) throws IOException, InterruptedException {
+            Path image = avd.toPath().resolve(FILE_NAME);
+            Files.deleteIfExists(image);
+            if (blankPath == null) {
+                format(image, sizeMB);
+            } else {
+                Path blank = new File(blankPath).toPath();
+                if (!Files.isRegularFile(blank)) {
+                    Files.createDirectories(blank.getParent());
+                    Path partial = blank.resolveSibling(blank.getFileName() + "." + UUID.randomUUID() + ".partial");
+                    try {
+                        format(partial, sizeMB);
+                        Files.move(partial, blank, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } finally {
+                        Files.deleteIfExists(partial);
+                    }
+                }
+                AVDTemplate.copy(blank, image);
+            }
+            enableSDCard(avd.toPath().resolve(CONFIG_INI));
+            return null;
+        }
+    }
+
+    // avdmanager only sets hw.sdCard=yes when it creates the SD card itself
+    private static void enableSDCard(Path configIni) throws IOException {
+        String content = Files.isRegularFile(configIni) ? new String(Files.readAllBytes(configIni), StandardCharsets.UTF_8) : "";
+        StringBuilder lines = new StringBuilder();
+        boolean found = false;
+        for (String line : content.split("\\r?\\n")) {
+            if (line.startsWith(KEY_SDCARD + "=")) {
+                line = KEY_SDCARD + "=yes";
+                found = true;
+            }
+            if (!line.isEmpty()) {
+                lines.append(line).append('\n');
+            }
+        }
+        if (!found) {
+            lines.append(KEY_SDCARD).append("=yes\n");
+        }
+        Files.write(configIni, lines.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Formats a sparse FAT32 image without partition table, as {@code mksdcard} does.
+     *
+     * @param image the image to create
+     * @param sizeMB size of the image in megabytes
+     */
+    static void format(@NonNull Path image, int sizeMB) throws IOException {
+        if (sizeMB < 9) {
+            throw new IOException(Messages.AndroidEmulatorBuild_sdCardTooSmall());
+        }
+        long totalSectors = sizeMB * MB / SECTOR_SIZE;
+        int sectorsPerCluster = getSectorsPerCluster(sizeMB * MB);
+        // one 4 bytes entry per cluster, plus the two reserved entries
+        long clusters = (totalSectors - RESERVED_SECTORS) / sectorsPerCluster;
+        long fatSectors = ((clusters + 2) * 4 + SECTOR_SIZE - 1) / SECTOR_SIZE;
+        long dataClusters = (totalSectors - RESERVED_SECTORS - FAT_COUNT * fatSectors) / sectorsPerCluster;
+
+        try (RandomAccessFile file = new RandomAccessFile(image.toFile(), "rw")) {
+            // sets the size without writing, the file is sparse
+            file.setLength(totalSectors * SECTOR_SIZE);
+
+            byte[] bootSector = bootSector(totalSectors, sectorsPerCluster, fatSectors);
+            byte[] fsInfo = fsInfoSector(dataClusters - 1);
+            write(file, 0, bootSector);
+            write(file, FS_INFO_SECTOR, fsInfo);
+            write(file, BACKUP_BOOT_SECTOR, bootSector);
+            write(file, BACKUP_BOOT_SECTOR + FS_INFO_SECTOR, fsInfo);
+
+            // media type, end of chain marker, end of the root directory chain
+            ByteBuffer fat = ByteBuffer.allocate(SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            fat.putInt(0x0FFFFFF8).putInt(0x0FFFFFFF).putInt(0x0FFFFFFF);
+            for (int i = 0; i < FAT_COUNT; i++) {
+                write(file, RESERVED_SECTORS + i * fatSectors, fat.array());
+            }
+            // the root directory is the zero filled cluster 2, left in the hole
+        }
+    }
+
+    // cluster sizes used by mksdcard
+    private static int getSectorsPerCluster(long size) {
+        if (size <= 260 * MB) {
+            return 1;
+        } else if (size <= 8192 * MB) {
+            return 8;
+        } else if (size <= 16384 * MB) {
+            return 16;
+        } else if (size <= 32768 * MB) {
+            return 32;
+        }
+        return 64;
+    }
+
+    private static byte[] bootSector(long totalSectors, int sectorsPerCluster, long fatSectors) {
+        ByteBuffer sector = ByteBuffer.allocate(SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        sector.put(new byte[] { (byte) 0xEB, 0x58, (byte) 0x90 });
+        sector.put("MSWIN4.1".getBytes(StandardCharsets.US_ASCII));
+        sector.putShort(0x0B, (short) SECTOR_SIZE);
+        sector.put(0x0D, (byte) sectorsPerCluster);
+        sector.putShort(0x0E, (short) RESERVED_SECTORS);
+        sector.put(0x10, (byte) FAT_COUNT);
+        // no fixed root directory nor 16 bits sizes in FAT32
+        sector.put(0x15, (byte) 0xF8);
+        sector.putShort(0x18, (short) 63);
+        sector.putShort(0x1A, (short) 255);
+        sector.putInt(0x20, (int) totalSectors);
+        sector.putInt(0x24, (int) fatSectors);
+        sector.putInt(0x2C, ROOT_CLUSTER);
+        sector.putShort(0x30, (short) FS_INFO_SECTOR);
+        sector.putShort(0x32, (short) BACKUP_BOOT_SECTOR);
+        sector.put(0x40, (byte) 0x80);
+        sector.put(0x42, (byte) 0x29);
+        sector.putInt(0x43, (int) (System.currentTimeMillis() / 1000));
+        sector.position(0x47);
+        sector.put("NO NAME    ".getBytes(StandardCharsets.US_ASCII));
+        sector.put("FAT32   ".getBytes(StandardCharsets.US_ASCII));
+        sector.put(0x1FE, (byte) 0x55);
+        sector.put(0x1FF, (byte) 0xAA);
+        return sector.array();
+    }
+
+    private static byte[] fsInfoSector(long freeClusters) {
+        ByteBuffer sector = ByteBuffer.allocate(SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        sector.putInt(0, 0x41615252);
+        sector.putInt(0x1E4, 0x61417272);
+        sector.putInt(0x1E8, (int) freeClusters);
+        // first cluster after the root directory
+        sector.putInt(0x1EC, ROOT_CLUSTER + 1);
+        sector.putInt(0x1FC, 0xAA550000);
+        return sector.array();
+    }
+
+    private static void write(RandomAccessFile file, long sector, byte[] data) throws IOException {
+        file.seek(sector * SECTOR_SIZE);
+        file.write(data);
+    }
+}
@@ -1,14 +1,15 @@
 package io.jenkins.plugins.sample;
 
 import hudson.Extension;
+import hudson.matrix.Combination;
 import hudson.matrix.MatrixConfiguration;
 import hudson.model.*;
 import hudson.model.Queue.BuildableItem;
-import hudson.model.Queue.Executable;
 import hudson.model.Queue.Task;
 import hudson.model.queue.CauseOfBlockage;
 import hudson.model.queue.QueueTaskDispatcher;
 import hudson.model.queue.SubTask;
+import io.jenkins.plugins.sample.cmd.model.EmulatorDemand;
 import jenkins.model.Jenkins;
 
 /**
@@ -19,6 +20,10 @@ import jenkins.model.Jenkins;
  * and check whether any other build currently running on the given {@link Node Node}
  * is already using this configuration. If so, we veto execution of the given {@code Task}.
  * </p>
+ * <p>
+ * On nodes declaring an {@link EmulatorNodeProperty}, builds are also held while the emulators they
+ * would add do not fit in the cores, RAM or number of emulators of the node.
+ * </p>
  * As Android emulator attributes will quite often be parameterised (especially for matrix builds),
  * we attempt to expand as many variables as possible, i.e. from the environment of the {@code Node}
  * and the axis combination for matrix builds. Because we are evaluating these parameters before the
@@ -36,7 +41,40 @@ public class TaskDispatcher extends QueueTaskDispatcher {
      * @return A hash representing the Android emulator configuration for the task, or {@code null}
      *         if the given task is not configured to start an Android emulator.
      */
-    private static String getEmulatorConfigHashForTask(Node node, SubTask task) {
+    static String getEmulatorConfigHashForTask(Node node, SubTask task) {
+        AndroidEmulatorBuildWrapper androidWrapper = getAndroidWrapper(task);
+        if (androidWrapper == null) {
+            return null;
+        }
+        // the hash only changes with the job configuration or the node environment
+        return ConfigHashIndex.get().getConfigHash(node, (Item) task, () -> computeEmulatorConfigHash(node, task, androidWrapper));
+    }
+
+    private static String computeEmulatorConfigHash(Node node, SubTask task, AndroidEmulatorBuildWrapper androidWrapper) {
+        if (task instanceof MatrixConfiguration) {
+            // If this is a matrix sub-build, substitute in the build variables
+            return androidWrapper.getConfigHash(node, ((MatrixConfiguration) task).getCombination());
+        }
+        return androidWrapper.getConfigHash(node);
+    }
+
+    /**
+     * Determines the resources of the node the Android emulator of the given task uses.
+     *
+     * @return {@link EmulatorDemand#NONE} if the given task is not configured to start an Android emulator.
+     */
+    static EmulatorDemand getEmulatorDemandForTask(Node node, SubTask task) {
+        AndroidEmulatorBuildWrapper androidWrapper = getAndroidWrapper(task);
+        if (androidWrapper == null) {
+            return EmulatorDemand.NONE;
+        }
+
+        Combination combination = task instanceof MatrixConfiguration ? ((MatrixConfiguration) task).getCombination() : null;
+        // like the hash, the demand only changes with the job configuration or the node environment
+        return ConfigHashIndex.get().getEmulatorDemand(node, (Item) task, () -> androidWrapper.getEmulatorDemand(node, combination));
+    }
+
+    static AndroidEmulatorBuildWrapper getAndroidWrapper(SubTask task) {
         // If the job doesn't use any BuildWrappers, we don't care
         if (!(task instanceof BuildableItemWithBuildWrappers)) {
             return null;
@@ -44,34 +82,51 @@ public class TaskDispatcher extends QueueTaskDispatcher {
 
         // Fetch the item that actually contains the BuildWrapper config and downcast it
         BuildableItemWithBuildWrappers job;
-        MatrixConfiguration matrixBuild = null;
         if (task instanceof MatrixConfiguration) {
-            matrixBuild = (MatrixConfiguration) task;
-            job = matrixBuild.getParent();
+            job = ((MatrixConfiguration) task).getParent();
         } else {
             job = (BuildableItemWithBuildWrappers) task;
         }
 
         // If we aren't one of the wrappers for this build, we don't care
-        AndroidEmulatorBuildWrapper androidWrapper = job.getBuildWrappersList().get(AndroidEmulatorBuildWrapper.class);
-        if (androidWrapper == null) {
-            return null;
-        }
+        return job.getBuildWrappersList().get(AndroidEmulatorBuildWrapper.class);
+    }
 
-        if (matrixBuild != null) {
-            // If this is a matrix sub-build, substitute in the build variables
-            return androidWrapper.getConfigHash(node, matrixBuild.getCombination());
+    /**
+     * Sums the resources of the emulators of the builds running, or about to run, on the given node.
+     * <p>
+     * Builds handed to an executor but still pending are not known to {@link ConfigHashIndex} yet,
+     * they are counted on every node, like their configuration hash in {@link #canTake}.
+     */
+    static EmulatorDemand getRunningDemand(Node node, Computer computer) {
+        EmulatorDemand total = ConfigHashIndex.get().getRunningDemand(computer.getName());
+        for (BuildableItem pending : Jenkins.get().getQueue().getPendingItems()) {
+            total = total.plus(getEmulatorDemandForTask(node, pending.task));
         }
-        return androidWrapper.getConfigHash(node);
+        return total;
     }
 
     @Override
     public CauseOfBlockage canTake(Node node, BuildableItem item) {
-        System.out.println("node: " + Node.InternalComputerListener.all().isEmpty() + "--------task: " + item.task);
         // If the given task doesn't use the AndroidEmulator BuildWrapper, we don't care.
-        // Or, if there is an emulator hash, but with unresolved environment variables, we shouldn't block the build
         String desiredHash = getEmulatorConfigHashForTask(node, item.task);
-        if (desiredHash == null || desiredHash.contains("$")) {
+        if (desiredHash == null) {
+            return null;
+        }
+
+        final Computer computer = node.toComputer();
+        if (computer == null) {
+            return CauseOfBlockage.fromMessage(Messages._NO_EXECUTORS_ON_NODE());
+        }
+
+        // Check whether the node has room left for one more emulator
+        CauseOfBlockage noCapacity = checkCapacity(node, computer, item.task, desiredHash);
+        if (noCapacity != null) {
+            return noCapacity;
+        }
+
+        // If there is an emulator hash, but with unresolved environment variables, we shouldn't block the build
+        if (desiredHash.contains("$")) {
             return null;
         }
 
@@ -99,24 +154,33 @@ public class TaskDispatcher extends QueueTaskDispatcher {
         }
 
         // Check whether a build with this emulator config is already running on this machine
-        final Computer computer = node.toComputer();
-        if (computer == null) {
-            return CauseOfBlockage.fromMessage(Messages._NO_EXECUTORS_ON_NODE());
+        if (ConfigHashIndex.get().isRunning(computer.getName(), desiredHash)) {
+            return CauseOfBlockage.fromMessage(Messages._WAITING_FOR_EMULATOR());
         }
 
-        for (Executor e : computer.getExecutors()) {
-            Executable executable = e.getCurrentExecutable();
-            if (executable == null) {
-                continue;
-            }
+        // Nope, no conflicting builds on this node
+        return null;
+    }
+
+    private static CauseOfBlockage checkCapacity(Node node, Computer computer, SubTask task, String desiredHash) {
+        EmulatorNodeProperty capacity = node.getNodeProperties().get(EmulatorNodeProperty.class);
+        if (capacity == null) {
+            return null;
+        }
 
-            String hash = getEmulatorConfigHashForTask(node, executable.getParent());
-            if (desiredHash.equals(hash)) {
-                return CauseOfBlockage.fromMessage(Messages._WAITING_FOR_EMULATOR());
+        // An idle emulator of the pool with this config is reused, it already runs on the node
+        for (EmulatorPool.PooledEmulator emulator : EmulatorPool.get().getEmulators(computer.getName())) {
+            if (!emulator.isLeased() && desiredHash.equals(emulator.getConfigHash())) {
+                return null;
             }
         }
 
-        // Nope, no conflicting builds on this node
+        // Idle emulators of the pool are not counted, they are shut down to make room when needed
+        EmulatorDemand total = getRunningDemand(node, computer).plus(getEmulatorDemandForTask(node, task));
+        String reason = capacity.exceeds(total);
+        if (reason != null) {
+            return CauseOfBlockage.fromMessage(Messages._WAITING_FOR_EMULATOR_CAPACITY(node.getDisplayName(), reason));
+        }
         return null;
     }
 }
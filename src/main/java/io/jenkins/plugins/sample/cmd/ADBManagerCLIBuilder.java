@@ -10,25 +10,19 @@ import io.jenkins.plugins.sample.Constants;
 import io.jenkins.plugins.sample.cmd.help.ToolsCommand;
 import io.jenkins.plugins.sample.cmd.help.Utils;
 import io.jenkins.plugins.sample.cmd.model.ADBDevice;
-import org.apache.commons.io.IOUtils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.StringTokenizer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class ADBManagerCLIBuilder {
 
     private static final String ARG_START_SERVER = "start-server";
     private static final String ARG_KILL_SERVER = "kill-server";
-    private static final String ARG_KILL_EMULATOR = "emu kill";
+    private static final String ARG_EMU = "emu";
+    private static final String ARG_KILL = "kill";
 
     private String sdkRoot = "";
 
@@ -85,58 +79,17 @@ public class ADBManagerCLIBuilder {
     // adb kill emulator eg: adb -s test_api29 emu kill
     public ChristelleCLICommand<Void> killEmulatorByEmulatorName(String emulatorName) {
         ArgumentListBuilder arguments = new ArgumentListBuilder();
-        if (serial != null) {
-            arguments.add("-s", emulatorName);
-        }
-        arguments.add(ARG_KILL_EMULATOR);
+        arguments.add("-s", emulatorName);
+        arguments.add(ARG_EMU, ARG_KILL);
         return new ChristelleCLICommand<>(executable, arguments, buildEnvVars());
     }
-    // adb kill emulator eg: adb -s emulator-5554 emu kill
-    public ChristelleCLICommand<Void> killEmulatorByPort(String...ports) {
-        ArgumentListBuilder arguments = new ArgumentListBuilder();
-        if (ports.length > 0) {
-            StringBuilder argumentsBuilder = new StringBuilder();
-            for (int i = 0; i < ports.length; i++) {
-                argumentsBuilder.append("emulator-").append(ports[i]);
-                if (i != ports.length - 1) {
-                    arguments.add(",");
-                }
-            }
-            arguments.add("-s", argumentsBuilder.toString());
-        }
-        arguments.add(ARG_KILL_EMULATOR);
-        return new ChristelleCLICommand<>(executable, arguments, buildEnvVars());
-    }
-
-    // adb devices list
-    public ChristelleCLICommand<List<ADBDevice>> listEmulatorDevices() {
-        ArgumentListBuilder arguments = new ArgumentListBuilder();
-        arguments.add("devices");
-        DevicesParse devicesParse = new DevicesParse();
-        return new ChristelleCLICommand<List<ADBDevice>>(executable, arguments, buildEnvVars())
-                .withParser(devicesParse);
-    }
 
-    // check emulator is booted
-    public ChristelleCLICommand<Boolean> emulatorIsBooted() {
+    // adb kill emulator eg: adb -s emulator-5554 emu kill, adb targets a single device per command
+    public ChristelleCLICommand<Void> killEmulatorByPort(String port) {
         ArgumentListBuilder arguments = new ArgumentListBuilder();
-        if (serial != null) {
-            arguments.add("-s", serial);
-        }
-        //getprop init.svc.bootanim
-        arguments.add("shell");
-        arguments.add("getprop");
-        arguments.add("sys.boot_completed");
-        //arguments.add("init.svc.bootanim");
-        ChristelleCLICommand.OutputParser<Boolean> outputParser = input -> {
-            if (input == null) return false;
-            BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
-            String line = reader.readLine();
-            System.out.println("is booted result: " + line);
-            return line != null && line.trim().equals("1");
-        };
-        return new ChristelleCLICommand<Boolean>(executable, arguments, buildEnvVars())
-                .withParser(outputParser);
+        arguments.add("-s", Constants.EMULATOR_NAME_PREFIX + port);
+        arguments.add(ARG_EMU, ARG_KILL);
+        return new ChristelleCLICommand<>(executable, arguments, buildEnvVars());
     }
 
     public static ADBManagerCLIBuilder withSDKRoot(String sdkRoot) {
@@ -178,45 +131,141 @@ public class ADBManagerCLIBuilder {
     }
 
 
+    /**
+     * Parses the output of {@code adb devices}, {@code adb devices -l} and of the
+     * {@code host:devices}/{@code host:devices-l} services of the adb server.
+     * <p>
+     * Runs while waiting for the boot of every emulator, so lines are scanned by hand and
+     * nothing but the device itself is allocated per line.
+     */
     public static class DevicesParse implements ChristelleCLICommand.OutputParser<List<ADBDevice>> {
 
-        final String LIST_OF_DEVICES_COLUMN = "List of devices attached";
+        static final String LIST_OF_DEVICES_COLUMN = "List of devices attached";
+
+        private static final String KEY_PRODUCT = "product";
+        private static final String KEY_MODEL = "model";
+        private static final String KEY_TRANSPORT_ID = "transport_id";
+
+        private final List<ADBDevice> emulatorList = new ArrayList<>();
 
+        //List of devices attached
+        //emulator-5554   device product:sdk_gphone64_x86_64 model:sdk_gphone64_x86_64 device:emu64xa transport_id:1
         @Override
-        public List<ADBDevice> parse(InputStream input) throws IOException {
-            List<ADBDevice> emulatorList = new ArrayList<>();
-            if (input == null) {
-                return emulatorList;
+        public boolean parseLine(String line) {
+            ADBDevice adbDevice = parseDevice(line, 0, line.length());
+            if (adbDevice != null) {
+                emulatorList.add(adbDevice);
             }
-            //List of devices attached
-            //emulator-5554   device
-            for (String line : IOUtils.readLines(input, "UTF-8")) {
-                if (line.contains(LIST_OF_DEVICES_COLUMN)) {
-                    continue;
-                }
-                String[] strings = parseAdbOutput(line);
-                if (strings == null || strings.length == 0) {
-                    continue;
+            return true;
+        }
+
+        @Override
+        public List<ADBDevice> getResult() {
+            return emulatorList;
+        }
+
+        /**
+         * Parses a whole output at once, eg: the payload of {@code host:devices}.
+         */
+        public List<ADBDevice> parseOutput(CharSequence output) {
+            int start = 0;
+            int length = output.length();
+            for (int i = 0; i < length; i++) {
+                if (output.charAt(i) == '\n') {
+                    addDevice(output, start, i);
+                    start = i + 1;
                 }
-                ADBDevice adbDevice = new ADBDevice(strings[0], strings[1]);
-                emulatorList.add(adbDevice);
             }
+            addDevice(output, start, length);
             return emulatorList;
         }
 
-        public static String[] parseAdbOutput(String adbOutput) {
-            // Define the regex pattern
-            String regex = "(\\S+)\\s+(\\S+)";
-            Pattern pattern = Pattern.compile(regex);
-            Matcher matcher = pattern.matcher(adbOutput);
-
-            // Find matches
-            if (matcher.find()) {
-                String emulatorName = matcher.group(1);
-                String status = matcher.group(2);
-                return new String[]{emulatorName, status};
+        private void addDevice(CharSequence output, int from, int to) {
+            ADBDevice adbDevice = parseDevice(output, from, to);
+            if (adbDevice != null) {
+                emulatorList.add(adbDevice);
             }
-            return null;
+        }
+
+        /**
+         * Parses the line between {@code from} and {@code to}.
+         *
+         * @return {@code null} if the line does not list a device
+         */
+        static ADBDevice parseDevice(CharSequence line, int from, int to) {
+            int serialStart = skipWhitespace(line, from, to);
+            // daemon messages start with '*', eg: * daemon started successfully
+            if (serialStart == to || line.charAt(serialStart) == '*' || regionMatches(line, serialStart, to, LIST_OF_DEVICES_COLUMN)) {
+                return null;
+            }
+            int serialEnd = skipToken(line, serialStart, to);
+            int stateStart = skipWhitespace(line, serialEnd, to);
+            if (stateStart == to) {
+                return null;
+            }
+            int stateEnd = skipToken(line, stateStart, to);
+            ADBDevice adbDevice = new ADBDevice(line.subSequence(serialStart, serialEnd).toString(),
+                    line.subSequence(stateStart, stateEnd).toString());
+
+            // key:value pairs of adb devices -l
+            int tokenStart = skipWhitespace(line, stateEnd, to);
+            while (tokenStart < to) {
+                int tokenEnd = skipToken(line, tokenStart, to);
+                int colon = tokenStart;
+                while (colon < tokenEnd && line.charAt(colon) != ':') {
+                    colon++;
+                }
+                if (colon < tokenEnd) {
+                    if (regionMatches(line, tokenStart, colon, KEY_PRODUCT)) {
+                        adbDevice.setProduct(line.subSequence(colon + 1, tokenEnd).toString());
+                    } else if (regionMatches(line, tokenStart, colon, KEY_MODEL)) {
+                        adbDevice.setModel(line.subSequence(colon + 1, tokenEnd).toString());
+                    } else if (regionMatches(line, tokenStart, colon, KEY_TRANSPORT_ID)) {
+                        adbDevice.setTransportId(parseLong(line, colon + 1, tokenEnd));
+                    }
+                }
+                tokenStart = skipWhitespace(line, tokenEnd, to);
+            }
+            return adbDevice;
+        }
+
+        private static int skipWhitespace(CharSequence line, int from, int to) {
+            while (from < to && Character.isWhitespace(line.charAt(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        private static int skipToken(CharSequence line, int from, int to) {
+            while (from < to && !Character.isWhitespace(line.charAt(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        // whether the region starts with the given text
+        private static boolean regionMatches(CharSequence line, int from, int to, String text) {
+            if (to - from < text.length()) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (line.charAt(from + i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long parseLong(CharSequence line, int from, int to) {
+            long value = 0;
+            for (int i = from; i < to; i++) {
+                char c = line.charAt(i);
+                if (c < '0' || c > '9') {
+                    return 0;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value;
         }
     }
 
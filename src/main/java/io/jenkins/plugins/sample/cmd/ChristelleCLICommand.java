@@ -6,6 +6,7 @@ import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.Proc;
+import hudson.console.LineTransformationOutputStream;
 import hudson.model.TaskListener;
 import hudson.util.ArgumentListBuilder;
 import hudson.util.ForkOutputStream;
@@ -15,13 +16,20 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import io.jenkins.plugins.sample.Constants;
+import io.jenkins.plugins.sample.cmd.help.EmulatorLogSink;
 import org.apache.commons.io.input.NullInputStream;
 import org.apache.tools.ant.filters.StringInputStream;
 
 public class ChristelleCLICommand<R> {
+    private static final Logger LOGGER = Logger.getLogger(ChristelleCLICommand.class.getName());
+    private static final long POLL_INTERVAL_MS = 200;
+
     private final ArgumentListBuilder arguments;
     private final FilePath command;
     private final EnvVars env;
@@ -72,24 +80,15 @@ public class ChristelleCLICommand<R> {
 
     public R execute(@NonNull TaskListener output, Launcher launcher) throws IOException, InterruptedException {
         Launcher.ProcStarter starter = buildCommand(output, launcher);
-        starter.stdout(output);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ParserOutputStream<R> sink = null;
         if (parser != null) {
-            starter.stdout(new ForkOutputStream(output.getLogger(), baos));
+            sink = new ParserOutputStream<>(parser);
+            starter.stdout(new ForkOutputStream(output.getLogger(), sink));
         } else {
             starter.stdout(output);
         }
 
-        System.out.println("starter cmds" + starter.cmds());
-        int exitCode = starter.join();
-        if (exitCode != 0) {
-            throw new IOException(command.getBaseName() + " " + arguments.toString() + " failed. exit code: " + exitCode + ".");
-        }
-
-        if (parser != null) {
-            return parser.parse(new ByteArrayInputStream(baos.toByteArray()));
-        }
-        return null;
+        return join(starter.start(), sink, 0, output);
     }
 
     public Proc executeAsync(@Nullable TaskListener output) throws IOException, InterruptedException {
@@ -104,23 +103,79 @@ public class ChristelleCLICommand<R> {
         return starter.start();
     }
 
+    /**
+     * Starts the process with its output, stderr merged, written to the given stream.
+     */
+    public Proc executeAsync(@NonNull OutputStream output, Launcher launcher) throws IOException, InterruptedException {
+        Launcher.ProcStarter starter = buildCommand(TaskListener.NULL, launcher);
+        starter.stdout(output);
+        return starter.start();
+    }
+
+    /**
+     * Starts the process on the node of the launcher with its output, stderr merged, kept there by
+     * the given log and streamed to the given stream until the log is detached.
+     */
+    public Proc executeAsync(@NonNull EmulatorLogSink log, @NonNull OutputStream console, Launcher launcher)
+            throws IOException, InterruptedException {
+        if (launcher == null) {
+            launcher = command.createLauncher(TaskListener.NULL);
+        }
+        return log.start(launcher, buildCommand(TaskListener.NULL, launcher), console);
+    }
+
     public R executeAsyncReturnData(@NonNull TaskListener output, Launcher launcher) throws IOException, InterruptedException {
         Launcher.ProcStarter starter = buildCommand(output, launcher);
-        starter.stdout(output.getLogger());
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ParserOutputStream<R> sink = null;
         if (parser != null) {
-            starter.stdout(stream);
+            sink = new ParserOutputStream<>(parser);
+            starter.stdout(sink);
+        } else {
+            starter.stdout(output.getLogger());
         }
-        Proc proc = starter.start();
         // 等待进程完成
-        int exitCode = proc.joinWithTimeout(Constants.BOOT_COMPLETE_TIMEOUT_MS, TimeUnit.MILLISECONDS, output);
-        if (exitCode != 0) {
-            throw new IOException(command.getBaseName() + " " + arguments.toString() + " failed. exit code: " + exitCode);
+        return join(starter.start(), sink, Constants.BOOT_COMPLETE_TIMEOUT_MS, output);
+    }
+
+    /**
+     * Waits for the process while its output is parsed, the process is killed as soon as the parser
+     * has what it needs or the timeout expires.
+     *
+     * @param timeout milliseconds to wait for, 0 to wait forever
+     */
+    private R join(Proc proc, @Nullable ParserOutputStream<R> sink, long timeout, TaskListener output) throws IOException, InterruptedException {
+        if (sink == null) {
+            int exitCode = timeout > 0 ? proc.joinWithTimeout(timeout, TimeUnit.MILLISECONDS, output) : proc.join();
+            checkExitCode(exitCode);
+            return null;
         }
-        if (parser != null) {
-            return parser.parse(new ByteArrayInputStream(stream.toByteArray()));
+
+        long deadline = System.currentTimeMillis() + timeout;
+        while (proc.isAlive()) {
+            if (sink.awaitFinished(POLL_INTERVAL_MS)) {
+                // the rest of the output is not needed
+                proc.kill();
+                return parser.getResult();
+            }
+            if (timeout > 0 && System.currentTimeMillis() > deadline) {
+                output.getLogger().println("Timeout expired, killing " + command.getBaseName());
+                proc.kill();
+                break;
+            }
+        }
+        int exitCode = proc.join();
+        // the last line may not end with a line terminator
+        sink.close();
+        if (!sink.isFinished()) {
+            checkExitCode(exitCode);
+        }
+        return parser.getResult();
+    }
+
+    private void checkExitCode(int exitCode) throws IOException {
+        if (exitCode != 0) {
+            throw new IOException(command.getBaseName() + " " + arguments.toString() + " failed. exit code: " + exitCode + ".");
         }
-        return null;
     }
 
     private Launcher.ProcStarter buildCommand(@Nullable TaskListener output, Launcher launcher) throws IOException, InterruptedException {
@@ -129,7 +184,7 @@ public class ChristelleCLICommand<R> {
         for (String arg : args) {
             stringBuilder.append(" ").append(arg);
         }
-        System.out.println(stringBuilder);
+        LOGGER.log(Level.FINE, "{0}", stringBuilder);
         if (output != null) {
             output.getLogger().println(stringBuilder);
         }
@@ -181,8 +236,86 @@ public class ChristelleCLICommand<R> {
         return this;
     }
 
+    /**
+     * Parses the output of a command line by line, while the command is still running.
+     * <p>
+     * A parser instance holds the state of one execution, a new one is needed for each command.
+     */
     public interface OutputParser<R> {
-        R parse(InputStream input) throws IOException;
+
+        /**
+         * Receives the next line of the output, without its line terminator.
+         *
+         * @return {@code false} once the parser has what it needs, the remaining output is skipped
+         */
+        boolean parseLine(String line) throws IOException;
+
+        /**
+         * @return the result of the lines received so far
+         */
+        R getResult();
+
+        /**
+         * Parses an output already available as a whole.
+         */
+        default R parse(InputStream input) throws IOException {
+            if (input != null) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null && parseLine(line)) {
+                    // until the end of the output or the parser stops
+                }
+            }
+            return getResult();
+        }
+    }
+
+    /**
+     * Hands each line written to a {@link OutputParser}, only one line is held in memory.
+     */
+    private static final class ParserOutputStream<R> extends LineTransformationOutputStream {
+        private final OutputParser<R> parser;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile IOException error;
+
+        ParserOutputStream(OutputParser<R> parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        protected void eol(byte[] b, int len) {
+            if (isFinished()) {
+                return;
+            }
+            try {
+                if (!parser.parseLine(trimEOL(new String(b, 0, len, StandardCharsets.UTF_8)))) {
+                    finished.countDown();
+                }
+            } catch (IOException e) {
+                error = e;
+                finished.countDown();
+            }
+        }
+
+        boolean isFinished() {
+            return finished.getCount() == 0;
+        }
+
+        boolean awaitFinished(long timeout) throws InterruptedException, IOException {
+            boolean done = finished.await(timeout, TimeUnit.MILLISECONDS);
+            if (error != null) {
+                throw error;
+            }
+            return done;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (error != null) {
+                throw error;
+            }
+        }
     }
 
 }
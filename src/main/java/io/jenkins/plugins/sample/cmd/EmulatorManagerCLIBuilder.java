@@ -8,11 +8,9 @@ import io.jenkins.plugins.sample.Constants;
 import io.jenkins.plugins.sample.cmd.help.ToolsCommand;
 import io.jenkins.plugins.sample.cmd.help.Utils;
 import io.jenkins.plugins.sample.cmd.model.EmulatorConfig;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Locale;
@@ -29,6 +27,7 @@ public class EmulatorManagerCLIBuilder {
     private static final String ARG_PROXY = "-http-proxy";
     private static final String ARG_NO_WINDOW = "-no-window";
     private static final String ARG_REPORT_CONSOLE = "-report-console";
+    private static final String ARG_SNAPSHOT = "-snapshot";
 
     final String sdkRoot;
     private EmulatorConfig emulatorConfig;
@@ -36,6 +35,7 @@ public class EmulatorManagerCLIBuilder {
     private CameraFront cameraFront;
     private CameraBack cameraBack;
     private SNAPSHOT mode;
+    private String snapshot;
     private int memory = -1;
     private boolean wipe;
     private ProxyConfiguration proxy;
@@ -120,6 +120,12 @@ public class EmulatorManagerCLIBuilder {
         return this;
     }
 
+    // boot from the given named snapshot instead of the default quick boot one
+    public EmulatorManagerCLIBuilder setSnapshot(String snapshot) {
+        this.snapshot = snapshot;
+        return this;
+    }
+
     public EmulatorManagerCLIBuilder setMemory(int memory) {
         this.memory = memory;
         return this;
@@ -168,6 +174,9 @@ public class EmulatorManagerCLIBuilder {
         }
 
         arguments.add(mode.value);
+        if (snapshot != null && mode != SNAPSHOT.NONE) {
+            arguments.add(ARG_SNAPSHOT, snapshot);
+        }
         if (cameraFront != null) {
             arguments.add(cameraFront.key, cameraFront.value);
         }
@@ -266,14 +275,22 @@ public class EmulatorManagerCLIBuilder {
             this.launcher = launcher;
         }
 
+        private boolean libNotFound;
+
         @Override
-        public Void parse(InputStream input) {
-            StringBuilder stringBuilder = new StringBuilder();
-            for (String line : IOUtils.readLines(input, "UTF-8")) {
-                stringBuilder.append(line).append("\r\n");
+        public boolean parseLine(String line) {
+            if (line.contains(LibFile.LIB_X11.key)) {
+                libNotFound = true;
+                // the emulator does not go further
+                return false;
             }
-            String result = stringBuilder.toString();
-            if (result.contains(LibFile.LIB_X11.key)) {
+            return true;
+        }
+
+        @Override
+        public Void getResult() {
+            if (libNotFound) {
+                libNotFound = false;
                 try {
                     String argument = "apt-get update && apt-get install -y " + LibFile.LIB_X11.value;
                     ChristelleCLICommand.executeWithArgument(launcher, argument, null);
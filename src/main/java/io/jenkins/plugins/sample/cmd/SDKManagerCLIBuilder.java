@@ -10,11 +10,9 @@ import io.jenkins.plugins.sample.cmd.help.ToolsCommand;
 import io.jenkins.plugins.sample.cmd.help.Utils;
 import io.jenkins.plugins.sample.cmd.model.SDKPackages;
 import io.jenkins.plugins.sample.cmd.model.Version;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
@@ -40,6 +38,7 @@ public class SDKManagerCLIBuilder implements Cloneable {
     private static final String ARG_INSTALL = "--install";
     private static final String ARG_UPDATE = "--update";
     private static final String ARG_LIST = "--list";
+    private static final String ARG_LIST_INSTALLED = "--list_installed";
     private static final String ARG_PROXY_HOST = "--proxy_host";
     private static final String ARG_PROXY_PORT = "--proxy_port";
     private static final String ARG_PROXY_PROTOCOL = "--proxy";
@@ -130,7 +129,6 @@ public class SDKManagerCLIBuilder implements Cloneable {
     }
 
     public ChristelleCLICommand<SDKPackages> list() {
-
         ArgumentListBuilder arguments = buildCommonOptions();
         arguments.add(ARG_LIST);
 
@@ -141,10 +139,16 @@ public class SDKManagerCLIBuilder implements Cloneable {
             // fallback to CLI arguments
             buildProxyArguments(arguments);
         }
-        ListPackagesParser parser = new ListPackagesParser();
-        System.out.println("executable----" + executable.getRemote());
         ChristelleCLICommand<SDKPackages> christelleCLICommand = new ChristelleCLICommand<>(executable, arguments, env);
-        return christelleCLICommand.withParser(parser);
+        return christelleCLICommand.withParser(new ListPackagesParser());
+    }
+
+    // only the installed packages, sdkmanager does not fetch the remote repositories
+    public ChristelleCLICommand<SDKPackages> listInstalled() {
+        ArgumentListBuilder arguments = buildCommonOptions();
+        arguments.add(ARG_LIST_INSTALLED);
+        return new ChristelleCLICommand<SDKPackages>(executable, arguments, new EnvVars())
+                .withParser(new ListPackagesParser(true));
     }
 
     private ArgumentListBuilder buildCommonOptions() {
@@ -247,75 +251,89 @@ public class SDKManagerCLIBuilder implements Cloneable {
     }
 
     static class ListPackagesParser implements ChristelleCLICommand.OutputParser<SDKPackages> {
+        private final boolean installedOnly;
+        private final SDKPackages result = new SDKPackages();
+        private List<Column> columns;
+        private List<SDKPackages.SDKPackage> bucket;
+
+        ListPackagesParser() {
+            this(false);
+        }
+
+        /**
+         * @param installedOnly stop at the end of the installed packages, the output of
+         *        {@code sdkmanager --list_installed} has nothing else
+         */
+        ListPackagesParser(boolean installedOnly) {
+            this.installedOnly = installedOnly;
+        }
+
         @Override
-        public SDKPackages parse(InputStream input) throws IOException {
-            SDKPackages result = new SDKPackages();
-
-            List<Column> columns = null;
-            List<SDKPackages.SDKPackage> bucket = null;
-            for (String line : IOUtils.readLines(input, "UTF-8")) { // NOSONAR
-                line = Util.fixEmptyAndTrim(line);
-                if (StringUtils.isBlank(line)) {
-                    continue;
-                }
+        public boolean parseLine(String line) {
+            line = Util.fixEmptyAndTrim(line);
+            if (StringUtils.isBlank(line)) {
+                return true;
+            }
 
-                String lcLine = line.toLowerCase();
-                if (StringUtils.isBlank(line)) {
-                    continue;
-                } else if (lcLine.startsWith("available packages")) {
-                    bucket = result.getAvailable();
-                    continue;
-                } else if (lcLine.startsWith("installed packages")) {
-                    bucket = result.getInstalled();
-                    continue;
-                } else if (lcLine.startsWith("available updates")) {
-                    bucket = result.getUpdates();
-                    continue;
-                } else if (bucket == null || lcLine.startsWith("--")) {
-                    continue;
-                } else if (isHeader(lcLine)) {
-                    columns = createMapping(lcLine);
-                    continue;
-                }
+            String lcLine = line.toLowerCase();
+            if (lcLine.startsWith("available packages")) {
+                bucket = result.getAvailable();
+                return !installedOnly;
+            } else if (lcLine.startsWith("installed packages")) {
+                bucket = result.getInstalled();
+                return true;
+            } else if (lcLine.startsWith("available updates")) {
+                bucket = result.getUpdates();
+                return !installedOnly;
+            } else if (bucket == null || lcLine.startsWith("--")) {
+                return true;
+            } else if (isHeader(lcLine)) {
+                columns = createMapping(lcLine);
+                return true;
+            }
 
-                // finally it's a table row
-                SDKPackages.SDKPackage sdkPackage = new SDKPackages.SDKPackage();
+            // finally it's a table row
+            if (columns == null || columns.isEmpty()) {
+                return true;
+            }
+            SDKPackages.SDKPackage sdkPackage = new SDKPackages.SDKPackage();
 
-                StringTokenizer st = new StringTokenizer(line, "|");
-                if (columns == null || columns.isEmpty()){
+            StringTokenizer st = new StringTokenizer(line, "|");
+            for (Column column : columns) { // NOSONAR
+                if (!st.hasMoreTokens()) {
+                    // guard in case cells are empty
                     continue;
                 }
-                for (Column column : columns) { // NOSONAR
-                    if (!st.hasMoreTokens()) {
-                        // guard in case cells are empty
-                        continue;
-                    }
-
-                    String value = Util.fixEmptyAndTrim(st.nextToken());
-                    if (value == null) {
-                        continue;
-                    }
-
-                    switch (column) {
-                        case NAME:
-                            sdkPackage.setId(value);
-                            break;
-                        case DESCRIPTION:
-                        case LOCATION:
-                            sdkPackage.setDescription(value);
-                            break;
-                        case VERSION:
-                        case AVAILABLE:
-                            sdkPackage.setVersion(new Version(value));
-                            break;
-                        case UNSUPPORTED:
-                            // skip
-                            break;
-                    }
+
+                String value = Util.fixEmptyAndTrim(st.nextToken());
+                if (value == null) {
+                    continue;
                 }
 
-                bucket.add(sdkPackage);
+                switch (column) {
+                    case NAME:
+                        sdkPackage.setId(value);
+                        break;
+                    case DESCRIPTION:
+                    case LOCATION:
+                        sdkPackage.setDescription(value);
+                        break;
+                    case VERSION:
+                    case AVAILABLE:
+                        sdkPackage.setVersion(new Version(value));
+                        break;
+                    case UNSUPPORTED:
+                        // skip
+                        break;
+                }
             }
+
+            bucket.add(sdkPackage);
+            return true;
+        }
+
+        @Override
+        public SDKPackages getResult() {
             return result;
         }
 
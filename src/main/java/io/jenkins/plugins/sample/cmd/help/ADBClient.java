@@ -0,0 +1,326 @@
+package io.jenkins.plugins.sample.cmd.help;
+
+import io.jenkins.plugins.sample.Constants;
+import io.jenkins.plugins.sample.cmd.ADBManagerCLIBuilder;
+import io.jenkins.plugins.sample.cmd.model.ADBDevice;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client of the ADB server that speaks the smart socket protocol, so that the
+ * adb binary does not have to be forked for every request.
+ * <p>
+ * The ADB server only listens on the loopback interface, the client must run
+ * on the node of the emulator: use the nested tasks to call it through the
+ * remoting channel.
+ */
+public class ADBClient {
+
+    private static final String OKAY = "OKAY";
+    private static final String FAIL = "FAIL";
+    private static final int CONNECT_TIMEOUT_MS = 5 * 1000;
+    private static final int READ_TIMEOUT_MS = 10 * 1000;
+    private static final long POLL_INTERVAL_MS = 200;
+
+    private final int port;
+
+    /**
+     * @param port the port of the ADB server, see {@code adb -P}
+     */
+    public ADBClient(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Lists the devices attached to the server, like {@code adb devices -l}.
+     */
+    public List<ADBDevice> devices() throws IOException {
+        try (Socket socket = connect(READ_TIMEOUT_MS)) {
+            send(socket, "host:devices-l");
+            String payload = readString(socket.getInputStream());
+            return new ADBManagerCLIBuilder.DevicesParse().parseOutput(payload);
+        }
+    }
+
+    /**
+     * Returns the state of the device, like {@code adb -s <serial> get-state}.
+     *
+     * @return device, offline, bootloader... or {@code null} if the server
+     *         does not know the device
+     */
+    public String getState(String serial) throws IOException {
+        try (Socket socket = connect(READ_TIMEOUT_MS)) {
+            socket.getOutputStream().write(encode("host-serial:" + serial + ":get-state"));
+            InputStream is = socket.getInputStream();
+            String status = readStatus(is);
+            String payload = readString(is);
+            return OKAY.equals(status) ? payload.trim() : null;
+        }
+    }
+
+    /**
+     * Runs a command on the device, like {@code adb -s <serial> shell <command>}.
+     *
+     * @param timeout milliseconds to wait for the command to complete
+     * @return the output of the command
+     */
+    public String shell(String serial, String command, int timeout) throws IOException {
+        try (Socket socket = connect(timeout)) {
+            send(socket, "host:transport:" + serial);
+            send(socket, "shell:" + command);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            InputStream is = socket.getInputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toString(StandardCharsets.UTF_8.name());
+        }
+    }
+
+    /**
+     * Waits until the device is online and has completed the boot.
+     *
+     * @param timeout milliseconds to wait for the boot
+     * @return {@code false} if the device did not boot in time
+     */
+    public boolean waitForBootCompleted(String serial, int timeout) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        // get-state is served by the adb server, waiting here does not involve the device
+        while (!"device".equals(getState(serial))) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+
+        int remaining = (int) TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            return false;
+        }
+        try {
+            return shell(serial, Constants.ADB_BOOT_COMPLETED_WATCH, remaining).trim().endsWith("1");
+        } catch (SocketTimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the protocol version of the server, like {@code adb version}, to check that it answers.
+     */
+    public int version() throws IOException {
+        try (Socket socket = connect(READ_TIMEOUT_MS)) {
+            send(socket, "host:version");
+            String payload = readString(socket.getInputStream());
+            try {
+                return Integer.parseInt(payload.trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid adb server version " + payload, e);
+            }
+        }
+    }
+
+    /**
+     * Stops the server, like {@code adb kill-server}.
+     */
+    public void kill() throws IOException {
+        try (Socket socket = connect(READ_TIMEOUT_MS)) {
+            send(socket, "host:kill");
+        }
+    }
+
+    private Socket connect(int timeout) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(timeout);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    private static void send(Socket socket, String request) throws IOException {
+        OutputStream os = socket.getOutputStream();
+        os.write(encode(request));
+        os.flush();
+
+        InputStream is = socket.getInputStream();
+        if (!OKAY.equals(readStatus(is))) {
+            throw new IOException("adb server refused " + request + ": " + readString(is));
+        }
+    }
+
+    // request are prefixed by their length as 4 hexadecimal digits
+    static byte[] encode(String request) {
+        byte[] payload = request.getBytes(StandardCharsets.UTF_8);
+        byte[] length = String.format("%04x", payload.length).getBytes(StandardCharsets.US_ASCII);
+        byte[] message = new byte[length.length + payload.length];
+        System.arraycopy(length, 0, message, 0, length.length);
+        System.arraycopy(payload, 0, message, length.length, payload.length);
+        return message;
+    }
+
+    static String readStatus(InputStream is) throws IOException {
+        String status = new String(readFully(is, 4), StandardCharsets.US_ASCII);
+        if (!OKAY.equals(status) && !FAIL.equals(status)) {
+            throw new IOException("Unexpected adb server response " + status);
+        }
+        return status;
+    }
+
+    static String readString(InputStream is) throws IOException {
+        int length;
+        try {
+            length = Integer.parseInt(new String(readFully(is, 4), StandardCharsets.US_ASCII), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid adb server response", e);
+        }
+        return new String(readFully(is, length), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readFully(InputStream is, int length) throws IOException {
+        byte[] data = new byte[length];
+        new DataInputStream(is).readFully(data);
+        return data;
+    }
+
+    /**
+     * Lists the devices attached to the ADB server of the node.
+     */
+    public static final class DevicesTask extends MasterToSlaveCallable<List<ADBDevice>, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int port;
+
+        public DevicesTask(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public List<ADBDevice> call() throws IOException {
+            return new ADBClient(port).devices();
+        }
+    }
+
+    /**
+     * Returns the protocol version of the ADB server of the node.
+     */
+    public static final class VersionTask extends MasterToSlaveCallable<Integer, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int port;
+
+        public VersionTask(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public Integer call() throws IOException {
+            return new ADBClient(port).version();
+        }
+    }
+
+    /**
+     * Stops the ADB server of the node.
+     */
+    public static final class KillTask extends MasterToSlaveCallable<Void, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int port;
+
+        public KillTask(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            new ADBClient(port).kill();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the state of a device attached to the ADB server of the node.
+     */
+    public static final class GetStateTask extends MasterToSlaveCallable<String, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int port;
+        private final String serial;
+
+        public GetStateTask(int port, String serial) {
+            this.port = port;
+            this.serial = serial;
+        }
+
+        @Override
+        public String call() throws IOException {
+            return new ADBClient(port).getState(serial);
+        }
+    }
+
+    /**
+     * Runs a shell command on a device attached to the ADB server of the node.
+     */
+    public static final class ShellTask extends MasterToSlaveCallable<String, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int port;
+        private final String serial;
+        private final String command;
+
+        public ShellTask(int port, String serial, String command) {
+            this.port = port;
+            this.serial = serial;
+            this.command = command;
+        }
+
+        @Override
+        public String call() throws IOException {
+            return new ADBClient(port).shell(serial, command, READ_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * Waits for a device attached to the ADB server of the node to complete the boot.
+     */
+    public static final class WaitForBootTask extends MasterToSlaveCallable<Boolean, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int port;
+        private final String serial;
+        private final int timeout;
+
+        public WaitForBootTask(int port, String serial, int timeout) {
+            this.port = port;
+            this.serial = serial;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public Boolean call() throws IOException {
+            try {
+                return new ADBClient(port).waitForBootCompleted(serial, timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+}
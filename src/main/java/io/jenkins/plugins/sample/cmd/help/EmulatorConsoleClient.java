@@ -0,0 +1,414 @@
+package io.jenkins.plugins.sample.cmd.help;
+
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client of the emulator console, the telnet service the emulator exposes on
+ * its console port (eg: 5554 for emulator-5554).
+ * <p>
+ * Unlike {@code adb emu} it does not need the ADB server. Connections are
+ * kept open on the node, keyed by console port, until {@link CloseTask} is
+ * called at the end of the build or the emulator is killed.
+ */
+public class EmulatorConsoleClient implements Closeable {
+
+    /** Milliseconds to wait for the answer of a command. */
+    public static final int DEFAULT_TIMEOUT_MS = 10 * 1000;
+    /** Saving or loading a snapshot writes the whole RAM of the emulator. */
+    public static final int SNAPSHOT_TIMEOUT_MS = 120 * 1000;
+
+    /** Milliseconds an emulator is given to exit after the kill command, before it is killed. */
+    public static final int SHUTDOWN_TIMEOUT_MS = 30 * 1000;
+    private static final String CMD_KILL = "kill";
+    private static final String ARG_PORTS = "-ports";
+    private static final String AUTH_TOKEN_FILE = ".emulator_console_auth_token";
+    private static final Pattern AUTH_TOKEN_PATH = Pattern.compile("'(.+" + Pattern.quote(AUTH_TOKEN_FILE) + ")'");
+    private static final int CONNECT_TIMEOUT_MS = 5 * 1000;
+    // answers of avd status and redir list
+    private static final Pattern STATUS = Pattern.compile("virtual device is (\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern REDIRECTION = Pattern.compile("(tcp|udp):(\\d+)\\s*=>\\s*(\\d+)", Pattern.CASE_INSENSITIVE);
+    private static final String NO_REDIRECTIONS = "no active redirections";
+
+    private static final Map<Integer, EmulatorConsoleClient> CONNECTIONS = new ConcurrentHashMap<>();
+
+    private final int port;
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final Writer writer;
+
+    private EmulatorConsoleClient(int port) throws IOException {
+        this.port = port;
+        this.socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(DEFAULT_TIMEOUT_MS);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            authenticate();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the open connection to the console of the emulator running on
+     * the given port, opening a new one if needed.
+     */
+    public static synchronized EmulatorConsoleClient connect(int port) throws IOException {
+        EmulatorConsoleClient client = CONNECTIONS.get(port);
+        if (client != null && !client.socket.isClosed()) {
+            return client;
+        }
+        client = new EmulatorConsoleClient(port);
+        EmulatorConsoleClient previous = CONNECTIONS.put(port, client);
+        if (previous != null && previous != client) {
+            previous.close();
+        }
+        return client;
+    }
+
+    // the banner ends with OK, it asks for the token stored in the user home when authentication is enabled
+    private void authenticate() throws IOException {
+        File tokenFile = null;
+        boolean required = false;
+        String line;
+        while (!"OK".equals(line = readLine())) {
+            if (line.contains("Authentication required")) {
+                required = true;
+            }
+            Matcher matcher = AUTH_TOKEN_PATH.matcher(line);
+            if (matcher.find()) {
+                tokenFile = new File(matcher.group(1));
+            }
+        }
+        if (!required) {
+            return;
+        }
+
+        if (tokenFile == null || !tokenFile.isFile()) {
+            tokenFile = new File(System.getProperty("user.home"), AUTH_TOKEN_FILE);
+        }
+        String token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8).trim();
+        send("auth " + token, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Sends a command to the console.
+     *
+     * @param command the console command, eg: avd status
+     * @param timeout milliseconds to wait for the answer
+     * @return the lines printed before OK
+     * @throws IOException if the console answers KO or does not answer in time
+     */
+    public synchronized String send(String command, int timeout) throws IOException {
+        StringBuilder response = new StringBuilder();
+        String line;
+        try {
+            socket.setSoTimeout(timeout);
+            writer.write(command + "\r\n");
+            writer.flush();
+
+            while (!(line = readLine()).startsWith("KO")) {
+                if (line.equals("OK") || line.startsWith("OK:")) {
+                    return response.toString();
+                }
+                response.append(line).append('\n');
+            }
+        } catch (IOException e) {
+            // the rest of the answer would be read by the next command
+            close();
+            throw e;
+        }
+        throw new IOException("Emulator console on port " + port + " refused '" + command + "': " + line);
+    }
+
+    /**
+     * Shuts the emulator down, the connection is closed by the emulator.
+     */
+    public void kill() throws IOException {
+        try {
+            send(CMD_KILL, DEFAULT_TIMEOUT_MS);
+        } catch (EOFException ignore) {
+            // the emulator may exit before the answer
+        } finally {
+            close();
+        }
+    }
+
+    private String readLine() throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new EOFException("Emulator console on port " + port + " closed the connection");
+        }
+        return line.trim();
+    }
+
+    @Override
+    public void close() throws IOException {
+        CONNECTIONS.remove(port, this);
+        socket.close();
+    }
+
+    /**
+     * Runs a console command on the emulator of the node.
+     */
+    public static final class CommandTask extends MasterToSlaveCallable<String, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int port;
+        private final String command;
+        private final int timeout;
+
+        public CommandTask(int port, String command) {
+            this(port, command, DEFAULT_TIMEOUT_MS);
+        }
+
+        public CommandTask(int port, String command, int timeout) {
+            this.port = port;
+            this.command = command;
+            this.timeout = timeout;
+        }
+
+        public static CommandTask kill(int port) {
+            return new CommandTask(port, CMD_KILL);
+        }
+
+        public static CommandTask saveSnapshot(int port, String name) {
+            return new CommandTask(port, "avd snapshot save " + name, SNAPSHOT_TIMEOUT_MS);
+        }
+
+        public static CommandTask loadSnapshot(int port, String name) {
+            return new CommandTask(port, "avd snapshot load " + name, SNAPSHOT_TIMEOUT_MS);
+        }
+
+        /**
+         * The answer is read with {@link #parseStatus(String)}.
+         */
+        public static CommandTask status(int port) {
+            return new CommandTask(port, "avd status");
+        }
+
+        /**
+         * Forwards a port of the host to a port of the emulator.
+         *
+         * @param protocol tcp or udp
+         */
+        public static CommandTask redirAdd(int port, String protocol, int hostPort, int guestPort) {
+            return new CommandTask(port, "redir add " + protocol + ":" + hostPort + ":" + guestPort);
+        }
+
+        public static CommandTask redirDel(int port, String protocol, int hostPort) {
+            return new CommandTask(port, "redir del " + protocol + ":" + hostPort);
+        }
+
+        /**
+         * The answer is read with {@link #parseRedirections(String)}.
+         */
+        public static CommandTask redirList(int port) {
+            return new CommandTask(port, "redir list");
+        }
+
+        /**
+         * Reads the answer of {@link #status(int)}, eg: virtual device is running.
+         *
+         * @return the state of the virtual device, eg: running, stopped or paused
+         */
+        public static String parseStatus(String response) throws IOException {
+            Matcher matcher = STATUS.matcher(response.trim());
+            if (!matcher.matches()) {
+                throw new IOException("Unexpected status of the emulator: " + response.trim());
+            }
+            return matcher.group(1).toLowerCase(Locale.ENGLISH);
+        }
+
+        /**
+         * Reads the answer of {@link #redirList(int)}, eg: {@code tcp:5000  => 6000}.
+         *
+         * @return the port of the emulator by protocol and port of the host, eg: tcp:5000 -> 6000
+         */
+        public static Map<String, Integer> parseRedirections(String response) throws IOException {
+            Map<String, Integer> redirections = new LinkedHashMap<>();
+            for (String line : response.split("\n")) {
+                line = line.trim();
+                if (line.isEmpty() || line.equals(NO_REDIRECTIONS)) {
+                    continue;
+                }
+                Matcher matcher = REDIRECTION.matcher(line);
+                if (!matcher.matches()) {
+                    throw new IOException("Unexpected redirection of the emulator: " + line);
+                }
+                redirections.put(matcher.group(1).toLowerCase(Locale.ENGLISH) + ":" + matcher.group(2), Integer.parseInt(matcher.group(3)));
+            }
+            return redirections;
+        }
+
+        @Override
+        public String call() throws IOException {
+            EmulatorConsoleClient client = connect(port);
+            if (CMD_KILL.equals(command)) {
+                client.kill();
+                return "";
+            }
+            return client.send(command, timeout);
+        }
+    }
+
+    /**
+     * Closes the console connections kept open for the given emulators.
+     */
+    public static final class CloseTask extends MasterToSlaveCallable<Void, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] ports;
+
+        public CloseTask(int... ports) {
+            this.ports = ports.clone();
+        }
+
+        @Override
+        public Void call() throws IOException {
+            for (int port : ports) {
+                EmulatorConsoleClient client = CONNECTIONS.get(port);
+                if (client != null) {
+                    client.close();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Shuts down the emulators of the node all at once through their console, the emulators that
+     * have not exited when the timeout expires are killed with their child processes.
+     */
+    public static final class ShutdownTask extends MasterToSlaveCallable<List<Integer>, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int timeout;
+        private final int[] ports;
+
+        /**
+         * @param timeout milliseconds to wait for the emulators to exit
+         * @param ports the console ports of the emulators
+         */
+        public ShutdownTask(int timeout, int... ports) {
+            this.timeout = timeout;
+            this.ports = ports.clone();
+        }
+
+        /**
+         * @return the console ports of the emulators that had to be killed
+         */
+        @Override
+        public List<Integer> call() throws IOException {
+            // the processes are looked up while the emulators still run
+            Map<Integer, List<ProcessHandle>> processes = new HashMap<>();
+            for (int port : ports) {
+                processes.put(port, findEmulator(port));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, ports.length));
+            try {
+                List<CompletableFuture<Void>> kills = new ArrayList<>();
+                for (int port : ports) {
+                    kills.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            connect(port).kill();
+                        } catch (IOException e) {
+                            // the process is killed once the timeout expires
+                        }
+                    }, executor));
+                }
+                CompletableFuture.allOf(kills.toArray(new CompletableFuture[0]))
+                        .get(remaining(deadline), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // the processes still alive are killed below
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
+            }
+
+            List<Integer> killed = new ArrayList<>();
+            for (int port : ports) {
+                boolean exited = true;
+                for (ProcessHandle process : processes.get(port)) {
+                    exited &= awaitExit(process, deadline);
+                }
+                if (!exited) {
+                    for (ProcessHandle process : processes.get(port)) {
+                        process.descendants().forEach(ProcessHandle::destroyForcibly);
+                        process.destroyForcibly();
+                    }
+                    killed.add(port);
+                }
+            }
+            return killed;
+        }
+
+        private static boolean awaitExit(ProcessHandle process, long deadline) {
+            if (Thread.currentThread().isInterrupted()) {
+                return !process.isAlive();
+            }
+            try {
+                process.onExit().get(remaining(deadline), TimeUnit.NANOSECONDS);
+                return true;
+            } catch (ExecutionException | TimeoutException e) {
+                return !process.isAlive();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return !process.isAlive();
+            }
+        }
+
+        private static long remaining(long deadline) {
+            return Math.max(0, deadline - System.nanoTime());
+        }
+
+        // the emulator and its QEMU process are started with -ports <console port>,<adb port>
+        private static List<ProcessHandle> findEmulator(int port) {
+            String prefix = port + ",";
+            return ProcessHandle.allProcesses().filter(process -> {
+                String[] arguments = process.info().arguments().orElse(null);
+                if (arguments != null) {
+                    int i = Arrays.asList(arguments).indexOf(ARG_PORTS);
+                    return i >= 0 && i + 1 < arguments.length && arguments[i + 1].startsWith(prefix);
+                }
+                return process.info().commandLine().map(line -> line.contains(ARG_PORTS + " " + prefix)).orElse(false);
+            }).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package io.jenkins.plugins.sample.cmd.help;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Proc;
+import hudson.console.LineTransformationOutputStream;
+import io.jenkins.plugins.sample.EmulatorCrashException;
+import io.jenkins.plugins.sample.EmulatorCrashException.Reason;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * Watches the emulator process while it boots, to fail as soon as it exits instead of waiting for
+ * the boot timeouts.
+ * <p>
+ * The output of the emulator, stderr merged, goes through this stream on its way to the log, its
+ * last lines are kept, unless it is kept on the node of the emulator by an {@link EmulatorLogSink}.
+ * Once the emulator has exited, the last of them that is a fatal message of the emulator, of QEMU or
+ * of the dynamic linker explains the crash: the warnings printed earlier during the boot do not.
+ */
+public final class EmulatorCrashDetector extends LineTransformationOutputStream {
+
+    private static final long POLL_INTERVAL_MS = 200;
+    // lines of output kept to explain the crash
+    private static final int TAIL_LINES = 50;
+
+    // eg: "emulator: ERROR: ", "PANIC: ", "FATAL   | "
+    private static final String FATAL = "^(?:emulator: )?(?:error|panic|fatal)\\s*[:|]\\s*";
+    // eg: "qemu-system-x86_64: "
+    private static final String QEMU = "^qemu-system-\\S+: ";
+
+    // fatal messages of the emulator, of QEMU and of the dynamic linker, by reason
+    private static final Map<Reason, List<Pattern>> PATTERNS = new EnumMap<>(Reason.class);
+
+    static {
+        PATTERNS.put(Reason.NO_KVM, patterns(FATAL + ".*emulation currently requires hardware acceleration",
+                FATAL + "kvm is required",
+                FATAL + "haxm is not installed",
+                FATAL + ".*hypervisor driver is not installed",
+                "^cpu acceleration status: (?:/dev/kvm |kvm is required|haxm is not installed|.*hypervisor driver is not installed)"));
+        PATTERNS.put(Reason.MISSING_LIB, patterns("^\\S+: error while loading shared libraries: .*cannot open shared object file",
+                FATAL + "could not load (?:\\S+ )*librar(?:y|ies)",
+                "^this application failed to start because no qt platform plugin could be initialized"));
+        PATTERNS.put(Reason.AVD_CORRUPT, patterns(FATAL + "unknown avd name",
+                FATAL + "(?:cannot find|broken) avd system path",
+                FATAL + "missing emulator engine program",
+                FATAL + "could not open userdata",
+                QEMU + ".*image is corrupt"));
+        PATTERNS.put(Reason.OUT_OF_MEMORY, patterns(QEMU + "cannot set up guest memory",
+                QEMU + ".*cannot allocate memory",
+                FATAL + ".*(?:cannot allocate memory|not enough memory|out of memory)"));
+    }
+
+    private final OutputStream out;
+    private final Deque<String> tail = new ArrayDeque<>(TAIL_LINES);
+    private volatile Proc process;
+    private volatile EmulatorLogSink log;
+
+    /**
+     * @param out where the output of the emulator is logged
+     */
+    public EmulatorCrashDetector(@NonNull OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @param process the emulator process, whose output is written to this stream
+     */
+    public void watch(@NonNull Proc process) {
+        this.process = process;
+    }
+
+    /**
+     * @param process the emulator process
+     * @param log keeps the output of the process on its node, rather than this stream
+     */
+    public void watch(@NonNull Proc process, @NonNull EmulatorLogSink log) {
+        this.log = log;
+        this.process = process;
+    }
+
+    private static List<Pattern> patterns(String... regexes) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String regex : regexes) {
+            patterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+        }
+        return patterns;
+    }
+
+    @Override
+    protected void eol(byte[] b, int len) throws IOException {
+        out.write(b, 0, len);
+        String line = trimEOL(new String(b, 0, len, StandardCharsets.UTF_8));
+        synchronized (tail) {
+            if (tail.size() == TAIL_LINES) {
+                tail.removeFirst();
+            }
+            tail.addLast(line);
+        }
+    }
+
+    // the last line kept that tells why the emulator exited
+    @CheckForNull
+    String findEvidence() {
+        synchronized (tail) {
+            return findEvidence(tail);
+        }
+    }
+
+    // the last of the last lines that tells why the emulator exited
+    @CheckForNull
+    static String findEvidence(@NonNull Deque<String> lines) {
+        int count = 0;
+        for (Iterator<String> it = lines.descendingIterator(); it.hasNext() && count < TAIL_LINES; count++) {
+            String line = it.next();
+            if (classify(line) != null) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    @CheckForNull
+    static Reason classify(String line) {
+        for (Map.Entry<Reason, List<Pattern>> patterns : PATTERNS.entrySet()) {
+            for (Pattern pattern : patterns.getValue()) {
+                if (pattern.matcher(line.trim()).find()) {
+                    return patterns.getKey();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @throws EmulatorCrashException if the emulator process has exited
+     */
+    public void check() throws IOException, InterruptedException {
+        Proc process = this.process;
+        if (process != null && !process.isAlive()) {
+            // join also waits for the rest of the output, here or on the node of the log
+            int exitCode = process.join();
+            EmulatorLogSink log = this.log;
+            String evidence = log != null ? log.findEvidence() : findEvidence();
+            throw new EmulatorCrashException(evidence != null ? classify(evidence) : Reason.UNKNOWN, exitCode, evidence);
+        }
+    }
+
+    /**
+     * Waits for the result of a task that depends on the emulator, the task is cancelled as soon
+     * as the emulator exits.
+     *
+     * @throws EmulatorCrashException if the emulator process exits meanwhile
+     */
+    public <V> V await(@NonNull Future<V> future) throws IOException, InterruptedException {
+        try {
+            while (true) {
+                try {
+                    return future.get(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    check();
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            future.cancel(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the log belongs to the caller
+        forceEol();
+        out.flush();
+    }
+}
@@ -0,0 +1,400 @@
+package io.jenkins.plugins.sample.cmd.help;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.console.LineTransformationOutputStream;
+import hudson.model.BuildListenerAdapter;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.Channel;
+import hudson.remoting.RemoteOutputStream;
+import jenkins.security.MasterToSlaveCallable;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the last lines written by the emulator of a build in a ring buffer of bounded size, on the
+ * node where the emulator runs.
+ * <p>
+ * The emulator is started on its node with its output written to the ring buffer there. While the
+ * emulator boots its output is also streamed to the build console, by a thread of its own fed
+ * through a bounded queue: the lines the console does not keep up with are dropped, and counted,
+ * rather than the emulator being held back. Once {@link #detach() detached}, the output only goes
+ * to the ring buffer and no longer crosses the channel, it is archived compressed with the build
+ * artifacts if the build fails.
+ * <p>
+ * Should the emulator crash, the fatal message that explains it is looked for in the ring buffer, on
+ * its node, so the lines the console dropped are not missed.
+ */
+public final class EmulatorLogSink {
+    private static final Logger LOGGER = Logger.getLogger(EmulatorLogSink.class.getName());
+
+    // kilobytes of output kept for the archive
+    private static final int SIZE_KB = SystemProperties.getInteger(EmulatorLogSink.class.getName() + ".sizeKB", 1024);
+    // lines waiting for the console before the next lines are dropped
+    private static final int QUEUE_SIZE = 256;
+
+    private volatile RemoteLog log;
+
+    /**
+     * Starts the emulator on the node of the launcher, its output goes to the console until
+     * {@link #detach()}.
+     *
+     * @param starter the emulator command
+     * @param console where the output is streamed while the emulator boots
+     */
+    @NonNull
+    public Proc start(@NonNull Launcher launcher, @NonNull Launcher.ProcStarter starter, @NonNull OutputStream console)
+            throws IOException, InterruptedException {
+        FilePath pwd = starter.pwd();
+        Started started = launcher.getChannel().call(new StartTask(starter.cmds(), starter.envs(), starter.masks(),
+                pwd != null ? pwd.getRemote() : null, new RemoteOutputStream(console)));
+        log = started.log;
+        return new RemoteProc(started.process);
+    }
+
+    /**
+     * Stops streaming the output to the console, the lines already received are still written.
+     */
+    public void detach() throws IOException {
+        RemoteLog log = this.log;
+        if (log != null) {
+            log.detach();
+        }
+    }
+
+    /**
+     * Looks for the fatal message that explains a crash in the last lines kept, once the emulator
+     * has exited.
+     *
+     * @return the last fatal message, null if there is none
+     */
+    @CheckForNull
+    String findEvidence() throws IOException {
+        RemoteLog log = this.log;
+        return log != null ? log.findEvidence() : null;
+    }
+
+    /**
+     * Archives the output kept, gzip compressed, as an artifact of the build.
+     *
+     * @param scratch a folder of the node of the emulator, where the archive is written before it is
+     *        handed to the artifact manager
+     * @param name the name of the artifact, eg: emulator-5554.log.gz
+     */
+    public void archive(@NonNull Run<?, ?> run, @NonNull FilePath scratch, @NonNull Launcher launcher,
+                        @NonNull TaskListener listener, @NonNull String name) throws IOException, InterruptedException {
+        RemoteLog log = this.log;
+        if (log == null) {
+            return;
+        }
+        scratch.mkdirs();
+        FilePath tmp = scratch.createTempDir("emulator-log", "tmp");
+        try {
+            // compressed on the node, nothing goes through the channel unless the build failed
+            if (log.archive(tmp.child(name).getRemote())) {
+                run.pickArtifactManager().archive(tmp, launcher, BuildListenerAdapter.wrap(listener), Collections.singletonMap(name, name));
+            }
+        } finally {
+            tmp.deleteRecursive();
+        }
+    }
+
+    /**
+     * Drops the output kept on the node.
+     */
+    public void close() throws IOException {
+        RemoteLog log = this.log;
+        this.log = null;
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    // the output of the emulator, on its node
+    interface RemoteLog {
+        void detach() throws IOException;
+
+        // once the process has exited, its output is all in the ring buffer
+        String findEvidence() throws IOException;
+
+        // false if there is no output to archive
+        boolean archive(String path) throws IOException;
+
+        void close() throws IOException;
+    }
+
+    // the emulator process, on its node
+    interface RemoteProcess {
+        boolean isAlive() throws IOException, InterruptedException;
+
+        int join() throws IOException, InterruptedException;
+
+        void kill() throws IOException, InterruptedException;
+    }
+
+    private static final class Started implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final RemoteProcess process;
+        final RemoteLog log;
+
+        Started(RemoteProcess process, RemoteLog log) {
+            this.process = process;
+            this.log = log;
+        }
+    }
+
+    private static final class StartTask extends MasterToSlaveCallable<Started, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> cmds;
+        private final String[] envs;
+        private final boolean[] masks;
+        private final String pwd;
+        private final OutputStream console;
+
+        StartTask(List<String> cmds, String[] envs, boolean[] masks, @CheckForNull String pwd, OutputStream console) {
+            this.cmds = cmds;
+            this.envs = envs;
+            this.masks = masks;
+            this.pwd = pwd;
+            this.console = console;
+        }
+
+        @Override
+        public Started call() throws IOException {
+            Ring ring = new Ring(Math.max(SIZE_KB, 1) * 1024, QUEUE_SIZE, console);
+            Launcher.ProcStarter starter = new Launcher.LocalLauncher(TaskListener.NULL).launch()
+                    .cmds(cmds)
+                    .envs(envs)
+                    .masks(masks)
+                    .stdout(ring);
+            if (pwd != null) {
+                starter.pwd(new File(pwd));
+            }
+            Proc proc = starter.start();
+            RemoteProcess process = new RemoteProcess() {
+                @Override
+                public boolean isAlive() throws IOException, InterruptedException {
+                    return proc.isAlive();
+                }
+
+                @Override
+                public int join() throws IOException, InterruptedException {
+                    return proc.join();
+                }
+
+                @Override
+                public void kill() throws IOException, InterruptedException {
+                    proc.kill();
+                }
+            };
+            // the built-in node runs the task in place
+            Channel channel = Channel.current();
+            return channel != null
+                    ? new Started(channel.export(RemoteProcess.class, process), channel.export(RemoteLog.class, ring))
+                    : new Started(process, ring);
+        }
+    }
+
+    private static final class RemoteProc extends Proc {
+        private final RemoteProcess process;
+
+        RemoteProc(RemoteProcess process) {
+            this.process = process;
+        }
+
+        @Override
+        public boolean isAlive() throws IOException, InterruptedException {
+            return process.isAlive();
+        }
+
+        @Override
+        public void kill() throws IOException, InterruptedException {
+            process.kill();
+        }
+
+        @Override
+        public int join() throws IOException, InterruptedException {
+            return process.join();
+        }
+
+        @Override
+        public InputStream getStdout() {
+            return null;
+        }
+
+        @Override
+        public InputStream getStderr() {
+            return null;
+        }
+
+        @Override
+        public OutputStream getStdin() {
+            return null;
+        }
+    }
+
+    /**
+     * The ring buffer, on the node of the emulator, and the stream of its lines to the console.
+     */
+    static final class Ring extends LineTransformationOutputStream implements RemoteLog {
+        private static final byte[] END = new byte[0];
+
+        private final byte[] ring;
+        private int head;
+        private long total;
+
+        private final OutputStream console;
+        private final BlockingQueue<byte[]> queue;
+        private volatile boolean attached = true;
+        // lines not shown in the console, it did not keep up
+        private long skipped;
+
+        Ring(int size, int queueSize, @NonNull OutputStream console) {
+            this.ring = new byte[size];
+            this.console = console;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            Thread thread = new Thread(this::drain, "Emulator output to the console");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        protected void eol(byte[] b, int len) throws IOException {
+            append(b, len);
+            if (!attached) {
+                return;
+            }
+            // never waits for the console, the emulator would block writing its output
+            if (!queue.offer(Arrays.copyOf(b, len))) {
+                synchronized (this) {
+                    skipped++;
+                }
+            }
+        }
+
+        private synchronized void append(byte[] b, int len) {
+            int offset = Math.max(0, len - ring.length);
+            int count = len - offset;
+            int first = Math.min(count, ring.length - head);
+            System.arraycopy(b, offset, ring, head, first);
+            System.arraycopy(b, offset + first, ring, 0, count - first);
+            head = (head + count) % ring.length;
+            total += count;
+        }
+
+        // writes the lines in the queue to the console, until detached
+        private void drain() {
+            try {
+                for (byte[] line; (line = queue.take()) != END;) {
+                    long skipped = takeSkipped();
+                    if (skipped > 0) {
+                        console.write(("[" + skipped + " lines of emulator output not shown]\n").getBytes(StandardCharsets.UTF_8));
+                    }
+                    console.write(line, 0, line.length);
+                }
+                console.flush();
+            } catch (IOException | InterruptedException e) {
+                attached = false;
+                queue.clear();
+                LOGGER.log(Level.FINE, "Stopped streaming the emulator output to the console", e);
+            }
+        }
+
+        private synchronized long takeSkipped() {
+            long skipped = this.skipped;
+            this.skipped = 0;
+            return skipped;
+        }
+
+        @Override
+        public void detach() {
+            if (!attached) {
+                return;
+            }
+            attached = false;
+            // the end marker never waits, the oldest lines make room for it
+            while (!queue.offer(END)) {
+                if (queue.poll() != null) {
+                    synchronized (this) {
+                        skipped++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the output kept in the ring buffer, the oldest lines are dropped first
+         */
+        synchronized byte[] getTail() {
+            if (total < ring.length) {
+                return Arrays.copyOf(ring, head);
+            }
+            byte[] tail = new byte[ring.length];
+            System.arraycopy(ring, head, tail, 0, ring.length - head);
+            System.arraycopy(ring, 0, tail, ring.length - head, head);
+            return tail;
+        }
+
+        synchronized long getDropped() {
+            return total - Math.min(total, ring.length);
+        }
+
+        @Override
+        public String findEvidence() throws IOException {
+            // the process has exited, nothing else writes
+            forceEol();
+            Deque<String> lines = new ArrayDeque<>();
+            for (String line : new String(getTail(), StandardCharsets.UTF_8).split("\\r?\\n")) {
+                lines.addLast(line);
+            }
+            return EmulatorCrashDetector.findEvidence(lines);
+        }
+
+        @Override
+        public boolean archive(String path) throws IOException {
+            forceEol();
+            byte[] tail = getTail();
+            if (tail.length == 0) {
+                return false;
+            }
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(new File(path).toPath()))) {
+                long dropped = getDropped();
+                if (dropped > 0) {
+                    out.write(("[" + dropped + " bytes of earlier output dropped]\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.write(tail);
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the console belongs to the build
+            forceEol();
+            detach();
+        }
+    }
+}
@@ -1,18 +1,35 @@
 package io.jenkins.plugins.sample.cmd.help;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.remoting.VirtualChannel;
 import jenkins.security.MasterToSlaveCallable;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Task that will wait, up to a certain timeout, for an inbound connection from the emulator,
  * informing us on which port it is running.
+ * <p>
+ * The connections of all the emulators started on an agent are accepted by a single selector
+ * thread, the task only waits for its own port and can be interrupted, for instance when the build
+ * is aborted.
  */
 public final class ReceiveEmulatorPortTask
         extends MasterToSlaveCallable<Integer, InterruptedException> {
@@ -24,35 +41,239 @@ public final class ReceiveEmulatorPortTask
 
     /**
      * @param port The local TCP port to listen on.
-     * @param timeout How many milliseconds to wait for an emulator connection before giving up.
+     * @param timeout How many milliseconds to wait for an emulator connection before giving up, 0
+     *        to wait until the task is interrupted.
      */
     public ReceiveEmulatorPortTask(int port, int timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative timeout: " + timeout);
+        }
         this.port = port;
         this.timeout = timeout;
     }
 
-    @SuppressFBWarnings("DM_DEFAULT_ENCODING")
+    /**
+     * Waits for the emulator to report its console port, giving up as soon as the emulator process
+     * exits.
+     *
+     * @param channel the channel of the node where the emulator runs
+     * @param crashDetector watches the emulator process
+     * @return the console port, -1 if the emulator did not report it in time
+     * @throws io.jenkins.plugins.sample.EmulatorCrashException if the emulator exited before reporting its port
+     */
+    public static int receive(@NonNull VirtualChannel channel, int port, int timeout, @NonNull EmulatorCrashDetector crashDetector)
+            throws IOException, InterruptedException {
+        return crashDetector.await(channel.callAsync(new ReceiveEmulatorPortTask(port, timeout)));
+    }
+
+    @Override
     public Integer call() throws InterruptedException {
-        // TODO: Find a better way to allow the build to be interrupted.
-        // ServerSocket#accept() blocks and cannot be interrupted, which means that any
-        // attempts to stop the build will fail.  The best we can do here is to set the
-        // SO_TIMEOUT, so at least if an emulator fails to start, we won't wait here forever
-        try (ServerSocket socket = new ServerSocket(port)) {
-            socket.setSoTimeout(timeout);
+        ServerSocketChannel server;
+        try {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            return -1;
+        }
+        Acceptor.Registration registration = null;
+        try {
+            registration = Acceptor.INSTANCE.register(server);
+            return timeout > 0 ? registration.reported.get(timeout, TimeUnit.MILLISECONDS) : registration.reported.get();
+        } catch (TimeoutException | ExecutionException | IOException e) {
+            // Timed out
+            return -1;
+        } finally {
+            if (registration != null) {
+                registration.close();
+            } else {
+                Acceptor.close(server);
+            }
+        }
+    }
+
+    /**
+     * Accepts the connections of the emulators and reads the port they send.
+     */
+    private static final class Acceptor implements Runnable {
+        private static final Logger LOGGER = Logger.getLogger(Acceptor.class.getName());
+
+        // the emulator sends at most a port number and a line feed
+        private static final int MAX_LENGTH = 16;
+
+        static final Acceptor INSTANCE = new Acceptor();
+
+        private final Queue<Registration> pending = new ConcurrentLinkedQueue<>();
+        private Selector selector;
+
+        private static final class Registration {
+            final ServerSocketChannel server;
+            final CompletableFuture<Integer> reported = new CompletableFuture<>();
+            // the connection of the emulator, once accepted
+            volatile SocketChannel client;
+
+            Registration(ServerSocketChannel server) {
+                this.server = server;
+            }
+
+            void fail(Throwable cause) {
+                reported.completeExceptionally(cause);
+                close();
+            }
+
+            // by the task when it stops waiting, by the selector thread when the port is read
+            void close() {
+                reported.cancel(false);
+                Acceptor.close(server);
+                SocketChannel client = this.client;
+                if (client != null) {
+                    Acceptor.close(client);
+                }
+            }
+        }
 
-            // Wait for the emulator to connect to us
-            Socket completed = socket.accept();
+        synchronized Registration register(ServerSocketChannel server) throws IOException {
+            if (selector == null || !selector.isOpen()) {
+                selector = Selector.open();
+                Thread thread = new Thread(this, "Emulator console port receiver");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            server.configureBlocking(false);
+            Registration registration = new Registration(server);
+            pending.add(registration);
+            selector.wakeup();
+            return registration;
+        }
 
-            // Parse and return the port number the emulator sent us
-            try (InputStream is = completed.getInputStream()) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-                return Integer.parseInt(reader.readLine());
-            } catch (NumberFormatException ignore) {
+        @Override
+        public void run() {
+            Selector selector;
+            synchronized (this) {
+                selector = this.selector;
+            }
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    for (Registration registration; (registration = pending.poll()) != null;) {
+                        try {
+                            registration.server.register(selector, SelectionKey.OP_ACCEPT, registration);
+                        } catch (IOException e) {
+                            // closed by the task that gave up meanwhile
+                            registration.fail(e);
+                        }
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        try {
+                            if (key.isAcceptable()) {
+                                accept(key);
+                            } else if (key.isReadable()) {
+                                read(key);
+                            }
+                        } catch (RuntimeException e) {
+                            // eg: the key has been cancelled by the task that gave up, the other emulators are still served
+                            getRegistration(key).fail(e);
+                            key.cancel();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                LOGGER.log(Level.WARNING, "Emulator console port receiver stopped", e);
+            } finally {
+                IOException stopped = new IOException("Emulator console port receiver stopped");
+                synchronized (this) {
+                    for (Registration registration; (registration = pending.poll()) != null;) {
+                        registration.fail(stopped);
+                    }
+                    if (this.selector == selector) {
+                        this.selector = null;
+                    }
+                }
+                try {
+                    for (SelectionKey key : selector.keys()) {
+                        getRegistration(key).fail(stopped);
+                    }
+                } catch (ClosedSelectorException e) {
+                    // closed already
+                }
+                close(selector);
             }
-        } catch (IOException ignore) {
         }
 
-        // Timed out
-        return -1;
+        private static Registration getRegistration(SelectionKey key) {
+            Object attachment = key.attachment();
+            return attachment instanceof Reader ? ((Reader) attachment).registration : (Registration) attachment;
+        }
+
+        private void accept(SelectionKey key) {
+            Registration registration = (Registration) key.attachment();
+            try {
+                SocketChannel client = registration.server.accept();
+                if (client == null) {
+                    return;
+                }
+                // one emulator per port, stop listening
+                key.cancel();
+                registration.client = client;
+                if (registration.reported.isDone()) {
+                    // the task gave up before it could see the connection
+                    close(client);
+                    return;
+                }
+                client.configureBlocking(false);
+                client.register(key.selector(), SelectionKey.OP_READ, new Reader(registration));
+            } catch (IOException e) {
+                registration.fail(e);
+                key.cancel();
+            }
+        }
+
+        private void read(SelectionKey key) {
+            Reader reader = (Reader) key.attachment();
+            SocketChannel client = (SocketChannel) key.channel();
+            try {
+                int read = client.read(reader.buffer);
+                String line = reader.line(read < 0);
+                if (line != null) {
+                    reader.registration.reported.complete(Integer.parseInt(line.trim()));
+                    reader.registration.close();
+                }
+            } catch (IOException | NumberFormatException e) {
+                reader.registration.fail(e);
+            }
+        }
+
+        static void close(Channel channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+
+        private static final class Reader {
+            final Registration registration;
+            final ByteBuffer buffer = ByteBuffer.allocate(MAX_LENGTH);
+
+            Reader(Registration registration) {
+                this.registration = registration;
+            }
+
+            // the first line, null while it is not complete
+            String line(boolean eof) throws IOException {
+                String content = new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+                int end = content.indexOf('\n');
+                if (end >= 0) {
+                    return content.substring(0, end);
+                }
+                if (eof) {
+                    return content;
+                }
+                if (!buffer.hasRemaining()) {
+                    throw new IOException("Unexpected report from the emulator: " + content);
+                }
+                return null;
+            }
+        }
     }
-}
\ No newline at end of file
+}
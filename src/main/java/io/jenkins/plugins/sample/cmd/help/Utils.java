@@ -5,15 +5,17 @@ import hudson.FilePath;
 import hudson.Launcher;
 import hudson.Util;
 import hudson.remoting.VirtualChannel;
+import hudson.util.VariableResolver;
 import io.jenkins.cli.shaded.org.apache.commons.lang.StringUtils;
 import io.jenkins.plugins.sample.Constants;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Logger;
 
 public class Utils {
+    private static final Logger LOGGER = Logger.getLogger(Utils.class.getName());
 
     // 根据所需要的工具返回对应的路径
     public static String findInSdkToolsHome(final boolean useLegacySdkStructure, ToolsCommand toolsCommand, boolean isUnix) {
@@ -51,7 +53,7 @@ public class Utils {
             toolHome = new File(sdkRoot, findInSdkToolsHome(false, toolsCommand, isUnix));
         }
         File cmd = new File(toolHome, toolsCommand.getExecutable(isUnix));
-        System.out.println("cmd: " + cmd.getPath());
+        LOGGER.fine(() -> "cmd: " + cmd.getPath());
         if (cmd.exists()) {
             return cmd.getPath();
         }
@@ -65,7 +67,7 @@ public class Utils {
             toolHome = new File(sdkRoot, findInSdkToolsHome(false, toolsCommand, isUnix));
         }
         File cmd = new File(toolHome, toolsCommand.getExecutable(platform == Platform.LINUX));
-        System.out.println("cmd: " + cmd.getPath());
+        LOGGER.fine(() -> "cmd: " + cmd.getPath());
         if (cmd.exists()) {
             return cmd.getPath();
         }
@@ -102,7 +104,7 @@ public class Utils {
             throw new IOException("Unable to get a path for the sdk root: " + sdkRoot);
         }
         FilePath filePath = new FilePath(channel, executableString);
-        System.out.println("-------------------------" + toolsCommand.name() + "---" + filePath.getRemote());
+        LOGGER.fine(() -> toolsCommand.name() + ": " + filePath.getRemote());
         return filePath;
     }
 
@@ -110,7 +112,6 @@ public class Utils {
         String newPath = StringUtils.join(paths, "/");
         if (platform == Platform.WINDOWS) {
             newPath = StringUtils.replace(newPath, "/", "\\");
-            System.out.println("is Windows" + newPath);
         }
         return newPath;
     }
@@ -118,14 +119,17 @@ public class Utils {
 
     public static String expandVariables(EnvVars envVars, Map<String,String> buildVars,
                                          String token) {
-        final Map<String,String> vars = new HashMap<String,String>(envVars);
-        if (buildVars != null) {
-            // Build-specific variables, if any, take priority over environment variables
-            vars.putAll(buildVars);
-        }
+        // Build-specific variables, if any, take priority over environment variables
+        // resolved in place, the environment is not copied since it is shared by the queue checks
+        final VariableResolver<String> vars = name -> {
+            if (buildVars != null && buildVars.containsKey(name)) {
+                return buildVars.get(name);
+            }
+            return envVars.get(name);
+        };
 
         String result = Util.fixEmptyAndTrim(token);
-        if (result != null) {
+        if (result != null && result.indexOf('$') != -1) {
             result = Util.replaceMacro(result, vars);
         }
         return Util.fixEmptyAndTrim(result);
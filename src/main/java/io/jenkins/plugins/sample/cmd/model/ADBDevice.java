@@ -1,9 +1,18 @@
 package io.jenkins.plugins.sample.cmd.model;
 
-public class ADBDevice {
+import java.io.Serializable;
+
+public class ADBDevice implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     String emulatorName;
     String status;// offline / device
 
+    // only listed by adb devices -l
+    String product;
+    String model;
+    long transportId;
+
 
     public ADBDevice(String emulatorName, String status) {
         this.emulatorName = emulatorName;
@@ -26,5 +35,32 @@ public class ADBDevice {
         this.status = status;
     }
 
+    public String getProduct() {
+        return product;
+    }
+
+    public void setProduct(String product) {
+        this.product = product;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    /**
+     * @return the id of the adb transport of the device, 0 if unknown
+     */
+    public long getTransportId() {
+        return transportId;
+    }
+
+    public void setTransportId(long transportId) {
+        this.transportId = transportId;
+    }
+
 
 }
@@ -1,10 +1,17 @@
 package io.jenkins.plugins.sample.cmd.model;
 
 import hudson.model.Action;
+import io.jenkins.plugins.sample.cmd.help.EmulatorLogSink;
 
 public class AndroidEmulatorShareDataAction implements Action {
 
     int emulatorConsolePort;
+    // name of the node of the emulator, empty for the built-in node
+    String nodeName;
+    // emulator configuration hash, set when the emulator is leased from the EmulatorPool
+    String configHash;
+    // output of the emulator booted by this build, archived if the build fails
+    transient EmulatorLogSink emulatorLog;
 
     public AndroidEmulatorShareDataAction(int emulatorConsolePort) {
         this.emulatorConsolePort = emulatorConsolePort;
@@ -14,6 +21,38 @@ public class AndroidEmulatorShareDataAction implements Action {
         return emulatorConsolePort;
     }
 
+    public void setEmulatorConsolePort(int emulatorConsolePort) {
+        this.emulatorConsolePort = emulatorConsolePort;
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    public void setNodeName(String nodeName) {
+        this.nodeName = nodeName;
+    }
+
+    public String getConfigHash() {
+        return configHash;
+    }
+
+    public void setConfigHash(String configHash) {
+        this.configHash = configHash;
+    }
+
+    public EmulatorLogSink getEmulatorLog() {
+        return emulatorLog;
+    }
+
+    public void setEmulatorLog(EmulatorLogSink emulatorLog) {
+        this.emulatorLog = emulatorLog;
+    }
+
+    public boolean isPooled() {
+        return configHash != null;
+    }
+
     @Override
     public String getIconFileName() {
         return "";
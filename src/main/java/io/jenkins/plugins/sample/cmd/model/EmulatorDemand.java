@@ -0,0 +1,100 @@
+package io.jenkins.plugins.sample.cmd.model;
+
+import hudson.Util;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Resources of the node an emulator uses while running, read from the
+ * {@code hw.cpu.ncore} and {@code hw.ramSize} hardware properties.
+ */
+public final class EmulatorDemand {
+
+    public static final String HW_CPU_NCORE = "hw.cpu.ncore";
+    public static final String HW_RAM_SIZE = "hw.ramSize";
+
+    /** Cores of an emulator that does not set hw.cpu.ncore. */
+    public static final int DEFAULT_CORES = 2;
+    /** Megabytes of RAM of an emulator that does not set hw.ramSize. */
+    public static final int DEFAULT_MEMORY_MB = 2048;
+
+    public static final EmulatorDemand NONE = new EmulatorDemand(0, 0, 0);
+
+    private final int emulators;
+    private final int cores;
+    private final int memory;
+
+    private EmulatorDemand(int emulators, int cores, int memory) {
+        this.emulators = emulators;
+        this.cores = cores;
+        this.memory = memory;
+    }
+
+    /**
+     * Resources of one emulator with the given hardware properties, unresolved
+     * or invalid values fall back to the defaults.
+     */
+    public static EmulatorDemand of(List<HardwareProperty> hardwareProperties) {
+        int cores = DEFAULT_CORES;
+        int memory = DEFAULT_MEMORY_MB;
+        if (hardwareProperties != null) {
+            for (HardwareProperty property : hardwareProperties) {
+                if (HW_CPU_NCORE.equals(property.getKey())) {
+                    cores = parseSize(property.getValue(), 1, DEFAULT_CORES);
+                } else if (HW_RAM_SIZE.equals(property.getKey())) {
+                    memory = parseSize(property.getValue(), 1, DEFAULT_MEMORY_MB);
+                }
+            }
+        }
+        return new EmulatorDemand(1, cores, memory);
+    }
+
+    // hw.ramSize accepts a size in megabytes, with an optional M or G unit
+    private static int parseSize(String value, int min, int defaultValue) {
+        value = Util.fixEmptyAndTrim(value);
+        if (value == null) {
+            return defaultValue;
+        }
+        value = value.toUpperCase(Locale.ENGLISH);
+        int factor = 1;
+        if (value.endsWith("G") || value.endsWith("GB")) {
+            factor = 1024;
+        }
+        value = value.replaceAll("[MGB]+$", "");
+        try {
+            int size = Integer.parseInt(value) * factor;
+            return size < min ? defaultValue : size;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public EmulatorDemand plus(EmulatorDemand other) {
+        return new EmulatorDemand(emulators + other.emulators, cores + other.cores, memory + other.memory);
+    }
+
+    public EmulatorDemand minus(EmulatorDemand other) {
+        return new EmulatorDemand(emulators - other.emulators, cores - other.cores, memory - other.memory);
+    }
+
+    public int getEmulators() {
+        return emulators;
+    }
+
+    public int getCores() {
+        return cores;
+    }
+
+    /**
+     * @return megabytes of RAM
+     */
+    public int getMemory() {
+        return memory;
+    }
+
+    @Override
+    public String toString() {
+        return emulators + " emulator(s), " + cores + " core(s), " + memory + " MB";
+    }
+}
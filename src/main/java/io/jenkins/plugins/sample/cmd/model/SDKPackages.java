@@ -2,13 +2,18 @@ package io.jenkins.plugins.sample.cmd.model;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 
 @SuppressFBWarnings(value = "EI_EXPOSE_REP")
-public class SDKPackages {
-    public static class SDKPackage implements Comparable<SDKPackage> {
+public class SDKPackages implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static class SDKPackage implements Comparable<SDKPackage>, Serializable {
+        private static final long serialVersionUID = 1L;
+
         private String id;
         private Version version;
         private Version available;
@@ -81,6 +81,14 @@ public class ScreenResolution implements Serializable {
         this(width, height, null, null);
     }
 
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
     public boolean isCustomResolution() {
         return alias == null;
     }
@@ -25,6 +25,7 @@ package io.jenkins.plugins.sample.cmd.model;
 
 import org.apache.commons.lang.StringUtils;
 
+import java.io.Serializable;
 import java.text.MessageFormat;
 import java.util.StringTokenizer;
 
@@ -42,7 +43,9 @@ import java.util.StringTokenizer;
  * <p>
  * {@code Version} objects are immutable.
  */
-public class Version implements Comparable<Version> {
+public class Version implements Comparable<Version>, Serializable {
+    private static final long serialVersionUID = 1L;
+
     private static final String MSG_INVALID_FORMAT = "invalid version \"{0}\": invalid format";
     private static final String MSG_NEGATIVE_NUMBER = "invalid version \"{0}\": negative number \"{1}\"";
     private static final String SEPARATOR = ".";
@@ -47,6 +47,7 @@ import io.jenkins.plugins.sample.Messages;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.logging.Logger;
 
 /**
  * Information about JDK installation.
@@ -56,6 +57,8 @@ import java.util.List;
  */
 @SuppressWarnings("serial")
 public class AndroidSDKInstallation extends ToolInstallation implements EnvironmentSpecific<AndroidSDKInstallation>, NodeSpecific<AndroidSDKInstallation> {
+    private static final Logger LOGGER = Logger.getLogger(AndroidSDKInstallation.class.getName());
+
     private Platform platform;
 
     @DataBoundConstructor
@@ -72,7 +75,7 @@ public class AndroidSDKInstallation extends ToolInstallation implements Environm
         }else {
             home = environment.expand(getHome());
         }
-        System.out.println("home: " + home);
+        LOGGER.fine("home: " + home);
         return new AndroidSDKInstallation(getName(), home, getProperties().toList(), platform);
     }
 
@@ -122,13 +122,13 @@ public class AndroidSDKInstaller extends DownloadFromUrlInstaller {
     private void installBasePackages(FilePath sdkRoot, TaskListener log) throws IOException, InterruptedException {
         String androidHome = getSDKHome(sdkRoot).getRemote();
 
-        SDKPackages packages = SDKManagerCLIBuilder.withSDKRoot(sdkRoot.getRemote())
+        SDKPackages packages = SDKPackagesCache.get(sdkRoot, channel, () -> SDKManagerCLIBuilder.withSDKRoot(sdkRoot.getRemote())
                 .createExecutableFormPlatform(sdkRoot.createLauncher(log), platform)
                 .setProxy(Jenkins.get().proxy)
                 .setChannel(channel)
                 .list()
                 .withEnv(Constants.ENV_VAR_ANDROID_SDK_HOME, androidHome) //
-                .execute();
+                .execute());
 
         // remove components already installed
         List<String> defaultPackages = DEFAULT_PACKAGES.stream() //
@@ -158,13 +158,15 @@ public class AndroidSDKInstaller extends DownloadFromUrlInstaller {
                     .sorted(Collections.reverseOrder()) // in case of wildcards we takes latest version
                     .findFirst().get().getId()));
 
-            SDKManagerCLIBuilder.withSDKRoot(sdkRoot.getRemote()) //
+            // a fresh agent gets the packages already downloaded by the others from the controller
+            SDKArchiveCache.install(sdkRoot, components, missing -> SDKManagerCLIBuilder.withSDKRoot(sdkRoot.getRemote()) //
                     .createExecutableFormPlatform(sdkRoot.createLauncher(log), platform)
                     .setProxy(Jenkins.get().proxy) //
                     .setChannel(channel) //
-                    .installSDK(components) //
+                    .installSDK(missing) //
                     .withEnv(Constants.ENV_VAR_ANDROID_SDK_ROOT, androidHome)
-                    .execute(log);
+                    .execute(log), log);
+            SDKPackagesCache.invalidate(sdkRoot);
         }
     }
 
@@ -0,0 +1,124 @@
+package io.jenkins.plugins.sample.sdk;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.remoting.VirtualChannel;
+import io.jenkins.plugins.sample.cmd.model.SDKPackages;
+import io.jenkins.plugins.sample.cmd.model.SDKPackages.SDKPackage;
+import io.jenkins.plugins.sample.cmd.model.Version;
+import jenkins.MasterToSlaveFileCallable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lists the packages installed in an SDK root reading the {@code package.xml}
+ * of each package, without launching sdkmanager.
+ * <p>
+ * Only the installed packages are returned, the available packages and the
+ * updates require sdkmanager to query the remote repositories.
+ */
+public class InstalledPackagesTask extends MasterToSlaveFileCallable<SDKPackages> {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(InstalledPackagesTask.class.getName());
+
+    @Override
+    public SDKPackages invoke(File sdkRoot, VirtualChannel channel) throws IOException, InterruptedException {
+        DocumentBuilder builder = newDocumentBuilder();
+
+        List<SDKPackage> installed = new LinkedList<>();
+        for (Map.Entry<String, Path> descriptor : PackageDescriptors.find(sdkRoot.toPath()).entrySet()) {
+            try {
+                SDKPackage sdkPackage = parse(builder.parse(descriptor.getValue().toFile()));
+                if (sdkPackage != null) {
+                    sdkPackage.setLocation(descriptor.getKey());
+                    installed.add(sdkPackage);
+                }
+            } catch (SAXException | IllegalArgumentException e) {
+                // a broken package is not installed, sdkmanager will fix it
+                LOGGER.log(Level.FINE, "Invalid package descriptor " + descriptor.getValue(), e);
+            }
+            builder.reset();
+        }
+
+        SDKPackages packages = new SDKPackages();
+        packages.setInstalled(installed);
+        return packages;
+    }
+
+    @CheckForNull
+    static SDKPackage parse(Document document) {
+        NodeList nodes = document.getElementsByTagName("localPackage");
+        if (nodes.getLength() == 0) {
+            return null;
+        }
+
+        Element localPackage = (Element) nodes.item(0);
+        SDKPackage sdkPackage = new SDKPackage();
+        sdkPackage.setId(localPackage.getAttribute("path"));
+        sdkPackage.setDescription(getChildText(localPackage, "display-name"));
+
+        sdkPackage.setVersion(parseRevision(getChild(localPackage, "revision")));
+        return sdkPackage;
+    }
+
+    // the revision element of a local or remote package
+    static Version parseRevision(@CheckForNull Element revision) {
+        if (revision == null) {
+            return Version.emptyVersion;
+        }
+        String preview = getChildText(revision, "preview");
+        return new Version(toInt(getChildText(revision, "major")),
+                toInt(getChildText(revision, "minor")),
+                toInt(getChildText(revision, "micro")),
+                preview != null ? "rc" + preview : null);
+    }
+
+    @CheckForNull
+    static Element getChild(Element parent, String name) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && name.equals(child.getNodeName())) {
+                return (Element) child;
+            }
+        }
+        return null;
+    }
+
+    @CheckForNull
+    static String getChildText(Element parent, String name) {
+        Element child = getChild(parent, name);
+        return child != null ? child.getTextContent().trim() : null;
+    }
+
+    private static int toInt(String value) {
+        return value == null || value.isEmpty() ? 0 : Integer.parseInt(value);
+    }
+
+    static DocumentBuilder newDocumentBuilder() throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setXIncludeAware(false);
+            factory.setExpandEntityReferences(false);
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.jenkins.plugins.sample.sdk;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Locates the {@code package.xml} written by sdkmanager in the folder of
+ * every installed package.
+ */
+final class PackageDescriptors {
+
+    static final String PACKAGE_XML = "package.xml";
+
+    // system-images/android-30/default/x86_64 is the deepest package layout
+    private static final int MAX_DEPTH = 5;
+
+    private PackageDescriptors() {
+        // default constructor
+    }
+
+    /**
+     * Returns the package descriptors under the SDK root.
+     *
+     * @param sdkRoot the SDK root
+     * @return the descriptors sorted by location of the package relative to
+     *         the SDK root, eg: platforms/android-30
+     */
+    static Map<String, Path> find(Path sdkRoot) throws IOException {
+        Map<String, Path> descriptors = new TreeMap<>();
+        if (!Files.isDirectory(sdkRoot)) {
+            return descriptors;
+        }
+
+        Files.walkFileTree(sdkRoot, EnumSet.noneOf(FileVisitOption.class), MAX_DEPTH, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                Path descriptor = dir.resolve(PACKAGE_XML);
+                if (Files.isRegularFile(descriptor)) {
+                    descriptors.put(sdkRoot.relativize(dir).toString().replace('\\', '/'), descriptor);
+                    // packages are never nested
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return descriptors;
+    }
+}
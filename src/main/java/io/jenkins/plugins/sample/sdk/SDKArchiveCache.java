@@ -0,0 +1,371 @@
+package io.jenkins.plugins.sample.sdk;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.util.io.ArchiverFactory;
+import io.jenkins.plugins.sample.cmd.help.Platform;
+import io.jenkins.plugins.sample.cmd.model.SDKPackages;
+import io.jenkins.plugins.sample.cmd.model.Version;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Cache on the controller of the SDK packages installed by sdkmanager, so that each package is
+ * downloaded once from the Google repositories and then copied to every agent that needs it.
+ * <p>
+ * A package is stored as the tar.gz of its folder in the SDK root, keyed by platform of the agent,
+ * package id and {@link Version}, eg:
+ * {@code $JENKINS_HOME/caches/android-sdk/LINUX/system-images/android-30/default/x86_64/1.0.0.tar.gz}.
+ * The latest version cached for a package is extracted on the agent, unless the package is installed
+ * there already, the packages missing from the cache are installed by sdkmanager meanwhile.
+ * <p>
+ * An archive produced by an agent is copied to every other agent, so it is only added to the cache
+ * once checked: the controller downloads the archive of the package published in the repository
+ * manifest, verifies its checksum against the manifest and compares its files to the folder
+ * archived on the agent, that must hold the same files and the {@code package.xml} of the same
+ * package and version. This is done in the background, the packages that no manifest lists or that
+ * do not match are not cached.
+ * <p>
+ * The cache is disabled with the system property
+ * {@code io.jenkins.plugins.sample.sdk.SDKArchiveCache.disabled}, stale versions are removed by
+ * deleting their archive.
+ */
+public final class SDKArchiveCache {
+
+    /**
+     * Installs packages on the agent, typically with {@code sdkmanager --install}.
+     */
+    public interface Installer {
+        void install(@NonNull Collection<String> packages) throws IOException, InterruptedException;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(SDKArchiveCache.class.getName());
+
+    private static final boolean DISABLED = SystemProperties.getBoolean(SDKArchiveCache.class.getName() + ".disabled");
+    private static final String EXTENSION = ".tar.gz";
+    private static final String PACKAGE_XML = "package.xml";
+
+    // node name and package folder -> lock of the extractions of the package on the node
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    // archives being checked before they are added to the cache
+    private static final Set<File> STORING = ConcurrentHashMap.newKeySet();
+
+    private SDKArchiveCache() {
+        // default constructor
+    }
+
+    /**
+     * Installs the given packages in the SDK root, from the cache when possible.
+     *
+     * @param sdkRoot the SDK root on the node
+     * @param packages ids of the packages to install, eg: platforms;android-30
+     * @param installer installs the packages not cached yet
+     * @param listener where the packages copied from the cache are logged
+     */
+    public static void install(@NonNull FilePath sdkRoot, @NonNull Collection<String> packages, @NonNull Installer installer,
+                               @NonNull TaskListener listener) throws IOException, InterruptedException {
+        Platform platform = getPlatform(sdkRoot);
+        if (platform == null) {
+            installer.install(packages);
+            return;
+        }
+        File cache = new File(Jenkins.get().getRootDir(), "caches/android-sdk/" + platform.name());
+
+        // package id -> archive of its latest cached version
+        Map<String, File> cached = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : packages) {
+            File archive = findLatest(cache, id);
+            if (archive != null) {
+                cached.put(id, archive);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        // the packages are independent, each one is extracted on its own while sdkmanager installs the others
+        List<Future<?>> extractions = new ArrayList<>();
+        for (Map.Entry<String, File> entry : cached.entrySet()) {
+            String id = entry.getKey();
+            File archive = entry.getValue();
+            listener.getLogger().println("Copying " + id + " " + getVersion(archive) + " from the SDK cache of the controller");
+            extractions.add(Computer.threadPoolForRemoting.submit(() -> {
+                extract(archive, sdkRoot, getLocation(id));
+                return null;
+            }));
+        }
+
+        try {
+            if (!missing.isEmpty()) {
+                installer.install(missing);
+                // the build does not wait for the controller to download and check the archives
+                Computer.threadPoolForRemoting.submit(() -> {
+                    try {
+                        store(cache, sdkRoot, platform, missing);
+                    } catch (IOException | InterruptedException e) {
+                        LOGGER.log(Level.WARNING, "Unable to store " + missing + " in the SDK cache", e);
+                    }
+                });
+            }
+        } finally {
+            for (Future<?> extraction : extractions) {
+                await(extraction);
+            }
+        }
+    }
+
+    // the platform of the node, the cache has a folder for each one, null if the cache can not be used
+    @CheckForNull
+    private static Platform getPlatform(FilePath sdkRoot) throws InterruptedException {
+        if (DISABLED) {
+            return null;
+        }
+        try {
+            return Platform.fromWorkspace(sdkRoot);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unknown platform for " + sdkRoot + ", SDK cache not used", e);
+            return null;
+        }
+    }
+
+    @CheckForNull
+    private static File findLatest(File cache, String id) {
+        File[] archives = new File(cache, getLocation(id)).listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (archives == null) {
+            return null;
+        }
+        File latest = null;
+        Version latestVersion = null;
+        for (File archive : archives) {
+            Version version = getVersion(archive);
+            if (version != null && (latestVersion == null || version.compareTo(latestVersion) > 0)) {
+                latest = archive;
+                latestVersion = version;
+            }
+        }
+        return latest;
+    }
+
+    // the content of the archive replaces the package folder, a partial copy would look installed
+    private static void extract(File archive, FilePath sdkRoot, String location) throws IOException, InterruptedException {
+        Computer computer = sdkRoot.toComputer();
+        String node = computer != null ? computer.getName() : String.valueOf(sdkRoot.getChannel());
+        // the builds of a node share its SDK root, one of them extracts the package, the others find it installed
+        synchronized (LOCKS.computeIfAbsent(node + ":" + sdkRoot.child(location).getRemote(), k -> new Object())) {
+            FilePath target = sdkRoot.child(location);
+            if (target.child(PACKAGE_XML).exists()) {
+                // installed meanwhile, it may be in use by an emulator
+                return;
+            }
+            FilePath partial = target.sibling(target.getName() + ".partial");
+            partial.deleteRecursive();
+            try (InputStream in = Files.newInputStream(archive.toPath())) {
+                partial.untarFrom(in, FilePath.TarCompression.GZIP);
+            }
+            target.deleteRecursive();
+            partial.renameTo(target);
+        }
+    }
+
+    // adds the packages just installed to the cache, with the version read from their package.xml
+    private static void store(File cache, FilePath sdkRoot, Platform platform, List<String> ids) throws IOException, InterruptedException {
+        SDKPackages installed = sdkRoot.act(new InstalledPackagesTask());
+        for (SDKPackages.SDKPackage installedPackage : installed.getInstalled()) {
+            if (!ids.contains(installedPackage.getId()) || installedPackage.getLocation() == null) {
+                continue;
+            }
+            File archive = new File(new File(cache, getLocation(installedPackage.getId())), installedPackage.getVersion() + EXTENSION);
+            // concurrent builds may install the same package, one of them stores it
+            if (archive.exists() || !STORING.add(archive)) {
+                continue;
+            }
+            try {
+                store(archive, sdkRoot.child(installedPackage.getLocation()), platform, installedPackage);
+            } catch (IOException e) {
+                // the package is installed anyway, the next install will store it
+                LOGGER.log(Level.WARNING, "Unable to store " + installedPackage.getId() + " in the SDK cache", e);
+            } finally {
+                STORING.remove(archive);
+            }
+        }
+    }
+
+    private static void store(File archive, FilePath folder, Platform platform, SDKPackages.SDKPackage installedPackage)
+            throws IOException, InterruptedException {
+        String id = installedPackage.getId();
+        Version version = installedPackage.getVersion();
+        SDKRepository.Archive published = SDKRepository.find(id, version, platform);
+        if (published == null) {
+            LOGGER.log(Level.FINE, "{0} {1} is not in the repository manifests, not cached", new Object[] { id, version });
+            return;
+        }
+
+        Files.createDirectories(archive.getParentFile().toPath());
+        File download = new File(archive.getParentFile(), archive.getName() + ".zip.tmp");
+        File temp = new File(archive.getParentFile(), archive.getName() + ".tmp");
+        try {
+            SDKRepository.download(published, download.toPath());
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                // compressed on the agent, before it goes through the channel
+                folder.archive(ArchiverFactory.TARGZ, out, "**");
+            }
+            if (!matches(download, temp, id, version)) {
+                LOGGER.log(Level.WARNING, "{0} {1} installed in {2} does not match {3}, not cached",
+                        new Object[] { id, version, folder, published.url });
+                return;
+            }
+            Files.move(temp.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(download.toPath());
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Checks a package folder archived on an agent against the archive published in the repository.
+     *
+     * @param published the zip downloaded from the repository, its checksum verified
+     * @param archive the tar.gz of the package folder
+     * @param id the package id
+     * @param version the version of the package
+     * @return true if the folder holds the files of the zip, with the same content, and nothing else
+     *         than the package.xml of the given package and version
+     */
+    static boolean matches(@NonNull File published, @NonNull File archive, @NonNull String id, @NonNull Version version)
+            throws IOException {
+        Map<String, String> expected = digest(published);
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(new GZIPInputStream(Files.newInputStream(archive.toPath())))) {
+            for (TarArchiveEntry entry; (entry = tar.getNextTarEntry()) != null;) {
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (!expected.containsKey(name) && PACKAGE_XML.equals(name)) {
+                    // written by sdkmanager, it is not in the zip
+                    if (!isDescriptor(tar.readAllBytes(), id, version)) {
+                        return false;
+                    }
+                    continue;
+                }
+                String digest = entry.isSymbolicLink()
+                        ? sha1(new ByteArrayInputStream(entry.getLinkName().getBytes(StandardCharsets.UTF_8)))
+                        : sha1(tar);
+                if (!digest.equals(expected.remove(name))) {
+                    return false;
+                }
+            }
+        }
+        return expected.isEmpty();
+    }
+
+    // file name -> sha1 of the files of the zip, without the top folder sdkmanager drops when it installs the package
+    private static Map<String, String> digest(File published) throws IOException {
+        Map<String, String> digests = new HashMap<>();
+        try (ZipFile zip = new ZipFile(published)) {
+            String top = null;
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                int slash = entry.getName().indexOf('/');
+                String folder = slash > 0 ? entry.getName().substring(0, slash + 1) : "";
+                if (top == null) {
+                    top = folder;
+                } else if (!top.equals(folder)) {
+                    top = "";
+                }
+            }
+            if (top == null) {
+                return digests;
+            }
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                // the content of a symbolic link is its target
+                try (InputStream in = zip.getInputStream(entry)) {
+                    digests.put(entry.getName().substring(top.length()), sha1(in));
+                }
+            }
+        }
+        return digests;
+    }
+
+    private static boolean isDescriptor(byte[] content, String id, Version version) throws IOException {
+        try {
+            SDKPackages.SDKPackage descriptor = InstalledPackagesTask.parse(
+                    InstalledPackagesTask.newDocumentBuilder().parse(new ByteArrayInputStream(content)));
+            return descriptor != null && id.equals(descriptor.getId()) && version.equals(descriptor.getVersion());
+        } catch (SAXException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String sha1(InputStream in) throws IOException {
+        MessageDigest digest = SDKRepository.newSHA1();
+        byte[] buffer = new byte[8192];
+        for (int read; (read = in.read(buffer)) != -1;) {
+            digest.update(buffer, 0, read);
+        }
+        return Util.toHexString(digest.digest());
+    }
+
+    // sdkmanager installs a package in the folder named after its id, eg: platforms;android-30 in platforms/android-30
+    private static String getLocation(String id) {
+        return id.replace(';', '/');
+    }
+
+    @CheckForNull
+    private static Version getVersion(File archive) {
+        String name = archive.getName();
+        try {
+            return new Version(name.substring(0, name.length() - EXTENSION.length()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
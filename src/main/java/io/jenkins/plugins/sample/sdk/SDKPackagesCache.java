@@ -0,0 +1,119 @@
+package io.jenkins.plugins.sample.sdk;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.remoting.VirtualChannel;
+import io.jenkins.plugins.sample.cmd.help.Channel;
+import io.jenkins.plugins.sample.cmd.model.SDKPackages;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the packages listed by {@code sdkmanager --list} for each SDK root
+ * of each node.
+ * <p>
+ * An entry expires after a TTL, that can be changed with the system property
+ * {@code io.jenkins.plugins.sample.sdk.SDKPackagesCache.ttl} (in minutes), or
+ * as soon as a {@code package.xml} under the SDK root changes. Who installs
+ * packages must call {@link #invalidate(FilePath)} to have them listed by the
+ * next lookup.
+ */
+public final class SDKPackagesCache {
+
+    /**
+     * Loads the packages when missing from the cache, typically with {@code sdkmanager --list}.
+     */
+    public interface Loader {
+        SDKPackages load() throws IOException, InterruptedException;
+    }
+
+    private static final long TTL = TimeUnit.MINUTES.toMillis(SystemProperties.getLong(SDKPackagesCache.class.getName() + ".ttl", 60L));
+
+    private static final Map<String, Entry> CACHE = new ConcurrentHashMap<>();
+
+    private SDKPackagesCache() {
+        // default constructor
+    }
+
+    /**
+     * Returns the packages of the given SDK root, listing them only when the
+     * cached entry is missing, expired or stale.
+     *
+     * @param sdkRoot the SDK root on the node
+     * @param channel the channel used to list the available packages
+     * @param loader lists the packages
+     * @return the packages of the SDK
+     */
+    public static SDKPackages get(@NonNull FilePath sdkRoot, @CheckForNull Channel channel, @NonNull Loader loader) throws IOException, InterruptedException {
+        String key = getKey(sdkRoot) + '|' + channel;
+        String stamp = sdkRoot.act(new PackagesStampTask());
+
+        Entry entry = CACHE.get(key);
+        if (entry != null && entry.isValid(stamp)) {
+            return entry.packages;
+        }
+
+        SDKPackages packages = loader.load();
+        CACHE.put(key, new Entry(packages, stamp));
+        return packages;
+    }
+
+    /**
+     * Discards the packages cached for the given SDK root, whatever the channel.
+     *
+     * @param sdkRoot the SDK root on the node
+     */
+    public static void invalidate(@NonNull FilePath sdkRoot) {
+        String prefix = getKey(sdkRoot) + '|';
+        CACHE.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static String getKey(FilePath sdkRoot) {
+        Computer computer = sdkRoot.toComputer();
+        String nodeName = computer != null ? computer.getName() : "";
+        return nodeName + '|' + sdkRoot.getRemote();
+    }
+
+    private static final class Entry {
+        private final SDKPackages packages;
+        private final String stamp;
+        private final long created = System.currentTimeMillis();
+
+        private Entry(SDKPackages packages, String stamp) {
+            this.packages = packages;
+            this.stamp = stamp;
+        }
+
+        private boolean isValid(String stamp) {
+            return this.stamp.equals(stamp) && System.currentTimeMillis() - created < TTL;
+        }
+    }
+
+    /**
+     * Digest of the last modified time of every {@code package.xml} in the SDK root.
+     */
+    private static final class PackagesStampTask extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String invoke(File sdkRoot, VirtualChannel channel) throws IOException, InterruptedException {
+            Map<String, Long> stamps = new TreeMap<>();
+            for (Map.Entry<String, Path> descriptor : PackageDescriptors.find(sdkRoot.toPath()).entrySet()) {
+                stamps.put(descriptor.getKey(), Files.getLastModifiedTime(descriptor.getValue()).toMillis());
+            }
+            return Util.getDigestOf(stamps.toString());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package io.jenkins.plugins.sample.sdk;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ProxyConfiguration;
+import hudson.Util;
+import io.jenkins.plugins.sample.cmd.help.Platform;
+import io.jenkins.plugins.sample.cmd.model.Version;
+import jenkins.util.SystemProperties;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The archives of the SDK packages published in the Google repositories, as listed by the manifests
+ * that sdkmanager reads, eg: {@code https://dl.google.com/android/repository/repository2-1.xml}.
+ * <p>
+ * The manifests are read on the controller, through the proxy of Jenkins, and kept for a day.
+ */
+final class SDKRepository {
+
+    static final String BASE_URL = SystemProperties.getString(SDKRepository.class.getName() + ".url",
+            "https://dl.google.com/android/repository/");
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * An archive of a package for a host OS, with its checksum from the manifest.
+     */
+    static final class Archive {
+        final URL url;
+        final String sha1;
+        @CheckForNull
+        final String hostOS;
+
+        Archive(@NonNull URL url, @NonNull String sha1, @CheckForNull String hostOS) {
+            this.url = url;
+            this.sha1 = sha1;
+            this.hostOS = hostOS;
+        }
+    }
+
+    private static final class Manifest {
+        // package id and version -> archives for each host OS
+        final Map<String, List<Archive>> archives;
+        final long read = System.currentTimeMillis();
+
+        Manifest(Map<String, List<Archive>> archives) {
+            this.archives = archives;
+        }
+    }
+
+    // manifest url -> archives listed
+    private static final Map<String, Manifest> MANIFESTS = new ConcurrentHashMap<>();
+
+    private SDKRepository() {
+        // default constructor
+    }
+
+    /**
+     * Finds the archive published for a package.
+     *
+     * @param id the package id, eg: platforms;android-30
+     * @param version the revision of the package
+     * @param platform the platform of the node where the package is installed
+     * @return the archive sdkmanager downloads for the package, null if no manifest lists it
+     */
+    @CheckForNull
+    static Archive find(@NonNull String id, @NonNull Version version, @NonNull Platform platform) throws IOException {
+        for (String manifest : getManifests(id)) {
+            Archive archive = select(read(new URL(BASE_URL + manifest)).get(getKey(id, version)), platform);
+            if (archive != null) {
+                return archive;
+            }
+        }
+        return null;
+    }
+
+    // the system images have a manifest for each tag, the other packages are in the main or the add-ons manifest
+    private static List<String> getManifests(String id) {
+        List<String> manifests = new ArrayList<>();
+        String[] segments = id.split(";");
+        if ("system-images".equals(segments[0])) {
+            if (segments.length > 2) {
+                manifests.add("sys-img/" + ("default".equals(segments[2]) ? "android" : segments[2]) + "/sys-img2-1.xml");
+            }
+        } else {
+            manifests.add("repository2-1.xml");
+            manifests.add("addon2-1.xml");
+        }
+        return manifests;
+    }
+
+    private static Map<String, List<Archive>> read(URL url) throws IOException {
+        Manifest manifest = MANIFESTS.get(url.toString());
+        if (manifest == null || System.currentTimeMillis() - manifest.read > MAX_AGE) {
+            try (InputStream in = ProxyConfiguration.getInputStream(url)) {
+                manifest = new Manifest(parse(InstalledPackagesTask.newDocumentBuilder().parse(in), url));
+            } catch (SAXException e) {
+                throw new IOException("Invalid manifest " + url, e);
+            }
+            MANIFESTS.put(url.toString(), manifest);
+        }
+        return manifest.archives;
+    }
+
+    // the complete archives of each remote package, their url is relative to the manifest
+    static Map<String, List<Archive>> parse(Document document, URL base) throws IOException {
+        Map<String, List<Archive>> archives = new HashMap<>();
+        NodeList packages = document.getElementsByTagName("remotePackage");
+        for (int i = 0; i < packages.getLength(); i++) {
+            Element remotePackage = (Element) packages.item(i);
+            Version version = InstalledPackagesTask.parseRevision(InstalledPackagesTask.getChild(remotePackage, "revision"));
+            List<Archive> packageArchives = archives.computeIfAbsent(getKey(remotePackage.getAttribute("path"), version), k -> new ArrayList<>());
+
+            NodeList nodes = remotePackage.getElementsByTagName("archive");
+            for (int j = 0; j < nodes.getLength(); j++) {
+                Element archive = (Element) nodes.item(j);
+                Element complete = InstalledPackagesTask.getChild(archive, "complete");
+                if (complete == null) {
+                    continue;
+                }
+                Element checksum = InstalledPackagesTask.getChild(complete, "checksum");
+                String location = InstalledPackagesTask.getChildText(complete, "url");
+                // newer manifests name the algorithm, sha1 otherwise
+                if (checksum == null || location == null
+                        || !(checksum.getAttribute("type").isEmpty() || "sha1".equals(checksum.getAttribute("type")))) {
+                    continue;
+                }
+                packageArchives.add(new Archive(new URL(base, location), checksum.getTextContent().trim(),
+                        InstalledPackagesTask.getChildText(archive, "host-os")));
+            }
+        }
+        return archives;
+    }
+
+    // the archive for the OS of the node, or the one for any OS
+    @CheckForNull
+    static Archive select(@CheckForNull List<Archive> archives, @NonNull Platform platform) {
+        if (archives == null) {
+            return null;
+        }
+        for (Archive archive : archives) {
+            if (archive.hostOS == null || archive.hostOS.equals(getHostOS(platform))) {
+                return archive;
+            }
+        }
+        return null;
+    }
+
+    private static String getHostOS(Platform platform) {
+        switch (platform) {
+        case WINDOWS:
+            return "windows";
+        case OSX:
+            return "macosx";
+        default:
+            return "linux";
+        }
+    }
+
+    /**
+     * Downloads the archive to the given file, checking its checksum.
+     *
+     * @throws IOException if the download does not match the checksum of the manifest
+     */
+    static void download(@NonNull Archive archive, @NonNull Path target) throws IOException {
+        MessageDigest digest = newSHA1();
+        try (InputStream in = new DigestInputStream(ProxyConfiguration.getInputStream(archive.url), digest);
+             OutputStream out = Files.newOutputStream(target)) {
+            in.transferTo(out);
+        }
+        String sha1 = Util.toHexString(digest.digest());
+        if (!sha1.equalsIgnoreCase(archive.sha1)) {
+            throw new IOException("Checksum of " + archive.url + " is " + sha1 + ", expected " + archive.sha1);
+        }
+    }
+
+    static MessageDigest newSHA1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getKey(String id, Version version) {
+        return id + '@' + version;
+    }
+}
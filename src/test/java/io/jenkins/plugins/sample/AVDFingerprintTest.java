@@ -0,0 +1,119 @@
+package io.jenkins.plugins.sample;
+
+import hudson.FilePath;
+import io.jenkins.plugins.sample.cmd.model.EmulatorConfig;
+import io.jenkins.plugins.sample.cmd.model.HardwareProperty;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AVDFingerprintTest {
+
+    private static final String SYSTEM_IMAGE = "system-images;android-30;default;x86_64";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FilePath avdPath;
+
+    @Before
+    public void setUp() throws Exception {
+        avdPath = new FilePath(folder.newFolder("test.avd"));
+        // as written by avdmanager
+        avdPath.child("config.ini").write("image.sysdir.1=system-images/android-30/default/x86_64/\n"
+                + "abi.type=x86_64\n"
+                + "hw.lcd.density=160\n", StandardCharsets.UTF_8.name());
+    }
+
+    private static EmulatorConfig config(HardwareProperty... properties) {
+        EmulatorConfig config = new EmulatorConfig();
+        config.setTargetABI("x86_64");
+        config.setDensity("160");
+        config.setResolution("WVGA");
+        config.setSdCardSize("100");
+        config.setHardwareProperties(Arrays.asList(properties));
+        return config;
+    }
+
+    @Test
+    public void appliedSettingsMatch() throws Exception {
+        AVDFingerprint fingerprint = new AVDFingerprint(config(new HardwareProperty("hw.ramSize", "2048")), SYSTEM_IMAGE);
+        assertThat(fingerprint.matches(avdPath)).isFalse();
+
+        fingerprint.apply(avdPath);
+
+        assertThat(fingerprint.matches(avdPath)).isTrue();
+        assertThat(avdPath.child("config.ini").readToString()).contains("hw.lcd.width=480", "hw.ramSize=2048", "sdcard.size=100M");
+    }
+
+    @Test
+    public void missingAvdDoesNotMatch() throws Exception {
+        AVDFingerprint fingerprint = new AVDFingerprint(config(), SYSTEM_IMAGE);
+        assertThat(fingerprint.matches(avdPath.child("missing.avd"))).isFalse();
+    }
+
+    @Test
+    public void changedValueDoesNotMatch() throws Exception {
+        new AVDFingerprint(config(new HardwareProperty("hw.ramSize", "2048")), SYSTEM_IMAGE).apply(avdPath);
+
+        AVDFingerprint fingerprint = new AVDFingerprint(config(new HardwareProperty("hw.ramSize", "4096")), SYSTEM_IMAGE);
+        assertThat(fingerprint.matches(avdPath)).isFalse();
+    }
+
+    @Test
+    public void otherSystemImageDoesNotMatch() throws Exception {
+        new AVDFingerprint(config(), SYSTEM_IMAGE).apply(avdPath);
+
+        AVDFingerprint fingerprint = new AVDFingerprint(config(), "system-images;android-31;default;x86_64");
+        assertThat(fingerprint.matches(avdPath)).isFalse();
+    }
+
+    @Test
+    public void keyAppliedEarlierDoesNotMatch() throws Exception {
+        new AVDFingerprint(config(new HardwareProperty("hw.ramSize", "2048"), new HardwareProperty("hw.keyboard", "yes")), SYSTEM_IMAGE)
+                .apply(avdPath);
+
+        AVDFingerprint fingerprint = new AVDFingerprint(config(new HardwareProperty("hw.ramSize", "2048")), SYSTEM_IMAGE);
+        assertThat(fingerprint.matches(avdPath)).isFalse();
+    }
+
+    @Test
+    public void avdNotAppliedDoesNotMatch() throws Exception {
+        // all the expected values are there, but the AVD has not been created by the plugin
+        avdPath.child("config.ini").write("image.sysdir.1=system-images/android-30/default/x86_64/\n"
+                + "abi.type=x86_64\n"
+                + "hw.lcd.density=160\n"
+                + "hw.lcd.width=480\n"
+                + "hw.lcd.height=800\n"
+                + "sdcard.size=100M\n", StandardCharsets.UTF_8.name());
+
+        AVDFingerprint fingerprint = new AVDFingerprint(config(), SYSTEM_IMAGE);
+        assertThat(fingerprint.matches(avdPath)).isFalse();
+    }
+
+    @Test
+    public void hardwareQemuIniCompletesConfigIni() throws Exception {
+        AVDFingerprint fingerprint = new AVDFingerprint(config(), SYSTEM_IMAGE);
+        fingerprint.apply(avdPath);
+        String configIni = avdPath.child("config.ini").readToString();
+        avdPath.child("config.ini").write(configIni.replace("abi.type=x86_64\n", ""), StandardCharsets.UTF_8.name());
+        assertThat(fingerprint.matches(avdPath)).isFalse();
+
+        avdPath.child("hardware-qemu.ini").write("abi.type = x86_64\n", StandardCharsets.UTF_8.name());
+        assertThat(fingerprint.matches(avdPath)).isTrue();
+    }
+
+    @Test
+    public void valueIsStable() {
+        String value = new AVDFingerprint(config(new HardwareProperty("hw.ramSize", "2048")), SYSTEM_IMAGE).getValue();
+
+        assertThat(new AVDFingerprint(config(new HardwareProperty("hw.ramSize", "2048")), SYSTEM_IMAGE).getValue()).isEqualTo(value);
+        assertThat(new AVDFingerprint(config(), SYSTEM_IMAGE).getValue()).isNotEqualTo(value);
+    }
+}
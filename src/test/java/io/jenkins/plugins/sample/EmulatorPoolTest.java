@@ -0,0 +1,86 @@
+package io.jenkins.plugins.sample;
+
+import io.jenkins.plugins.sample.cmd.model.EmulatorConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmulatorPoolTest {
+
+    private EmulatorPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new EmulatorPool();
+    }
+
+    private static EmulatorConfig config(String name, int consolePort) {
+        EmulatorConfig config = new EmulatorConfig();
+        config.setEmulatorName(name);
+        config.setEmulatorConsolePort(consolePort);
+        config.setEmulatorADBConnectPort(consolePort + 1);
+        return config;
+    }
+
+    @Test
+    public void registeredEmulatorIsLeasedUntilReleased() {
+        EmulatorPool.PooledEmulator emulator = pool.register("node", "hash", config("avd", 5554), "golden");
+
+        assertThat(emulator.isLeased()).isTrue();
+        assertThat(emulator.getSerial()).isEqualTo("emulator-5554");
+        assertThat(pool.lease("node", "hash")).isNull();
+
+        pool.release(emulator);
+        assertThat(emulator.isLeased()).isFalse();
+        assertThat(pool.lease("node", "hash")).isSameAs(emulator);
+        assertThat(emulator.isLeased()).isTrue();
+    }
+
+    @Test
+    public void leaseMatchesNodeAndConfiguration() {
+        EmulatorPool.PooledEmulator emulator = pool.register("node", "hash", config("avd", 5554), "golden");
+        pool.release(emulator);
+
+        assertThat(pool.lease("other", "hash")).isNull();
+        assertThat(pool.lease("node", "other")).isNull();
+        assertThat(pool.lease("node", "hash")).isSameAs(emulator);
+    }
+
+    @Test
+    public void findLooksUpTheConsolePort() {
+        EmulatorPool.PooledEmulator first = pool.register("node", "a", config("a", 5554), "golden");
+        EmulatorPool.PooledEmulator second = pool.register("node", "b", config("b", 5556), "golden");
+
+        assertThat(pool.find("node", 5556)).isSameAs(second);
+        assertThat(pool.find("node", 5554)).isSameAs(first);
+        assertThat(pool.find("node", 5558)).isNull();
+        assertThat(pool.find("other", 5554)).isNull();
+    }
+
+    @Test
+    public void evictIdleKeepsLeasedEmulators() {
+        EmulatorPool.PooledEmulator leased = pool.register("node", "a", config("a", 5554), "golden");
+        EmulatorPool.PooledEmulator idle = pool.register("node", "b", config("b", 5556), "golden");
+        EmulatorPool.PooledEmulator kept = pool.register("node", "c", config("c", 5558), "golden");
+        pool.release(idle);
+        pool.release(kept);
+
+        List<EmulatorPool.PooledEmulator> evicted = pool.evictIdle("node", e -> !e.getAvdName().equals("c"));
+
+        assertThat(evicted).containsExactly(idle);
+        assertThat(pool.getEmulators("node")).containsExactly(leased, kept);
+    }
+
+    @Test
+    public void discardForgetsTheNodeWithItsLastEmulator() {
+        EmulatorPool.PooledEmulator emulator = pool.register("node", "hash", config("avd", 5554), "golden");
+
+        pool.discard(emulator);
+
+        assertThat(pool.getEmulators("node")).isEmpty();
+        assertThat(pool.evictIdle("node", e -> true)).isEmpty();
+    }
+}
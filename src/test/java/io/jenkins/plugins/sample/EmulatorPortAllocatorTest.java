@@ -0,0 +1,69 @@
+package io.jenkins.plugins.sample;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmulatorPortAllocatorTest {
+
+    private static Set<Integer> ports(Integer... ports) {
+        return new HashSet<>(Arrays.asList(ports));
+    }
+
+    @Test
+    public void firstEmulatorGetsTheDefaultPorts() {
+        EmulatorPortAllocator.Ports ports = EmulatorPortAllocator.pick(ports());
+
+        assertThat(ports.getConsolePort()).isEqualTo(5554);
+        assertThat(ports.getAdbConnectPort()).isEqualTo(5555);
+        assertThat(ports.getReportConsolePort()).isEqualTo(55000);
+    }
+
+    @Test
+    public void takenPortsAreSkipped() {
+        EmulatorPortAllocator.Ports ports = EmulatorPortAllocator.pick(ports(5554, 5555, 55000));
+
+        assertThat(ports.getConsolePort()).isEqualTo(5556);
+        assertThat(ports.getAdbConnectPort()).isEqualTo(5557);
+        assertThat(ports.getReportConsolePort()).isEqualTo(55001);
+    }
+
+    @Test
+    public void consolePortNeedsItsAdbPortFree() {
+        // emulator-5556 can not start when 5557 is bound by another process
+        EmulatorPortAllocator.Ports ports = EmulatorPortAllocator.pick(ports(5554, 5557));
+
+        assertThat(ports.getConsolePort()).isEqualTo(5558);
+        assertThat(ports.getAdbConnectPort()).isEqualTo(5559);
+    }
+
+    @Test
+    public void noPortLeft() {
+        Set<Integer> taken = IntStream.rangeClosed(EmulatorPortAllocator.MIN_CONSOLE_PORT, EmulatorPortAllocator.MAX_CONSOLE_PORT + 1)
+                .boxed().collect(Collectors.toSet());
+
+        assertThat(EmulatorPortAllocator.pick(taken)).isNull();
+        assertThat(EmulatorPortAllocator.MAX_EMULATORS).isEqualTo(65);
+    }
+
+    @Test
+    public void boundPortsAreReported() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            int bound = socket.getLocalPort();
+            int free;
+            try (ServerSocket other = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                free = other.getLocalPort();
+            }
+
+            assertThat(new EmulatorPortAllocator.BoundPortsTask(new int[] { bound, free }).call()).containsExactly(bound);
+        }
+    }
+}
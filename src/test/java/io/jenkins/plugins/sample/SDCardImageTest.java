@@ -0,0 +1,121 @@
+package io.jenkins.plugins.sample;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SDCardImageTest {
+
+    private static final int SECTOR_SIZE = 512;
+    // 64 MB: one sector per cluster, 32 reserved sectors and two FATs of 1024 sectors
+    private static final int SIZE_MB = 64;
+    private static final long TOTAL_SECTORS = 131072;
+    private static final long FAT_SECTORS = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void bootSector() throws Exception {
+        ByteBuffer sector = sector(format(), 0);
+
+        assertThat(sector.get(0) & 0xFF).isEqualTo(0xEB);
+        assertThat(sector.getShort(0x0B)).isEqualTo((short) SECTOR_SIZE);
+        assertThat(sector.get(0x0D)).isEqualTo((byte) 1);
+        assertThat(sector.getShort(0x0E)).isEqualTo((short) 32);
+        assertThat(sector.get(0x10)).isEqualTo((byte) 2);
+        // no fixed root directory nor 16 bits sizes in FAT32
+        assertThat(sector.getShort(0x11)).isZero();
+        assertThat(sector.getShort(0x13)).isZero();
+        assertThat(sector.getShort(0x16)).isZero();
+        assertThat(sector.get(0x15) & 0xFF).isEqualTo(0xF8);
+        assertThat(sector.getInt(0x20)).isEqualTo((int) TOTAL_SECTORS);
+        assertThat(sector.getInt(0x24)).isEqualTo((int) FAT_SECTORS);
+        assertThat(sector.getInt(0x2C)).isEqualTo(2);
+        assertThat(sector.getShort(0x30)).isEqualTo((short) 1);
+        assertThat(sector.getShort(0x32)).isEqualTo((short) 6);
+        assertThat(sector.get(0x42)).isEqualTo((byte) 0x29);
+        assertThat(text(sector, 0x52, 8)).isEqualTo("FAT32   ");
+        assertThat(sector.getShort(0x1FE) & 0xFFFF).isEqualTo(0xAA55);
+    }
+
+    @Test
+    public void backupSectors() throws Exception {
+        Path image = format();
+
+        assertThat(sector(image, 6).array()).isEqualTo(sector(image, 0).array());
+        assertThat(sector(image, 7).array()).isEqualTo(sector(image, 1).array());
+    }
+
+    @Test
+    public void fsInfoSector() throws Exception {
+        ByteBuffer sector = sector(format(), 1);
+
+        assertThat(sector.getInt(0)).isEqualTo(0x41615252);
+        assertThat(sector.getInt(0x1E4)).isEqualTo(0x61417272);
+        // the clusters of the data region, except the root directory
+        assertThat(sector.getInt(0x1E8)).isEqualTo((int) (TOTAL_SECTORS - 32 - 2 * FAT_SECTORS - 1));
+        assertThat(sector.getInt(0x1EC)).isEqualTo(3);
+        assertThat(sector.getInt(0x1FC)).isEqualTo(0xAA550000);
+    }
+
+    @Test
+    public void fats() throws Exception {
+        Path image = format();
+
+        for (long fat : new long[] { 32, 32 + FAT_SECTORS }) {
+            ByteBuffer sector = sector(image, fat);
+            assertThat(sector.getInt(0)).isEqualTo(0x0FFFFFF8);
+            assertThat(sector.getInt(4)).isEqualTo(0x0FFFFFFF);
+            // the root directory is a single cluster
+            assertThat(sector.getInt(8)).isEqualTo(0x0FFFFFFF);
+            // every other cluster is free
+            assertThat(Arrays.copyOfRange(sector.array(), 12, SECTOR_SIZE)).containsOnly((byte) 0);
+        }
+    }
+
+    @Test
+    public void emptyRootDirectory() throws Exception {
+        Path image = format();
+
+        assertThat(Files.size(image)).isEqualTo(TOTAL_SECTORS * SECTOR_SIZE);
+        assertThat(sector(image, 32 + 2 * FAT_SECTORS).array()).containsOnly((byte) 0);
+    }
+
+    @Test
+    public void tooSmall() {
+        assertThatThrownBy(() -> SDCardImage.format(folder.getRoot().toPath().resolve("small.img"), 8))
+                .isInstanceOf(IOException.class);
+    }
+
+    private Path format() throws IOException {
+        Path image = folder.getRoot().toPath().resolve(SDCardImage.FILE_NAME);
+        SDCardImage.format(image, SIZE_MB);
+        return image;
+    }
+
+    private static ByteBuffer sector(Path image, long sector) throws IOException {
+        byte[] data = new byte[SECTOR_SIZE];
+        try (RandomAccessFile file = new RandomAccessFile(image.toFile(), "r")) {
+            file.seek(sector * SECTOR_SIZE);
+            file.readFully(data);
+        }
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String text(ByteBuffer sector, int offset, int length) {
+        return new String(sector.array(), offset, length, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,67 @@
+package io.jenkins.plugins.sample.cmd;
+
+import io.jenkins.plugins.sample.cmd.model.ADBDevice;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DevicesParseTest {
+
+    @Test
+    public void devicesWithDetails() {
+        List<ADBDevice> devices = new ADBManagerCLIBuilder.DevicesParse().parseOutput(
+                "* daemon not running; starting now at tcp:5037\n"
+                + "* daemon started successfully\n"
+                + "List of devices attached\n"
+                + "emulator-5554          device product:sdk_gphone64_x86_64 model:sdk_gphone64_x86_64 device:emu64xa transport_id:1\n"
+                + "emulator-5556\toffline transport_id:12\n"
+                + "\n");
+
+        assertThat(devices).extracting(ADBDevice::getEmulatorName).containsExactly("emulator-5554", "emulator-5556");
+        assertThat(devices).extracting(ADBDevice::getStatus).containsExactly("device", "offline");
+        assertThat(devices.get(0).getProduct()).isEqualTo("sdk_gphone64_x86_64");
+        assertThat(devices.get(0).getModel()).isEqualTo("sdk_gphone64_x86_64");
+        assertThat(devices.get(0).getTransportId()).isEqualTo(1L);
+        assertThat(devices.get(1).getModel()).isNull();
+        assertThat(devices.get(1).getTransportId()).isEqualTo(12L);
+    }
+
+    @Test
+    public void hostDevicesPayloadHasNoHeader() {
+        // host:devices answers one line per device, without a trailing line feed
+        List<ADBDevice> devices = new ADBManagerCLIBuilder.DevicesParse().parseOutput("emulator-5554\tdevice\nemulator-5556\tunauthorized");
+
+        assertThat(devices).extracting(ADBDevice::getEmulatorName).containsExactly("emulator-5554", "emulator-5556");
+        assertThat(devices).extracting(ADBDevice::getStatus).containsExactly("device", "unauthorized");
+    }
+
+    @Test
+    public void noDevice() {
+        assertThat(new ADBManagerCLIBuilder.DevicesParse().parseOutput("List of devices attached\n\n")).isEmpty();
+        assertThat(new ADBManagerCLIBuilder.DevicesParse().parseOutput("")).isEmpty();
+    }
+
+    @Test
+    public void lineWithoutStateIsSkipped() {
+        assertThat(new ADBManagerCLIBuilder.DevicesParse().parseOutput("emulator-5554\n")).isEmpty();
+    }
+
+    @Test
+    public void invalidTransportIdIsZero() {
+        List<ADBDevice> devices = new ADBManagerCLIBuilder.DevicesParse().parseOutput("emulator-5554 device transport_id:x1\n");
+
+        assertThat(devices.get(0).getTransportId()).isZero();
+    }
+
+    @Test
+    public void parseLineMatchesParseOutput() {
+        ADBManagerCLIBuilder.DevicesParse parser = new ADBManagerCLIBuilder.DevicesParse();
+        assertThat(parser.parseLine("List of devices attached")).isTrue();
+        assertThat(parser.parseLine("emulator-5554          device product:sdk_gphone64_x86_64 transport_id:3")).isTrue();
+
+        assertThat(parser.getResult()).hasSize(1);
+        assertThat(parser.getResult().get(0).getTransportId()).isEqualTo(3L);
+    }
+}
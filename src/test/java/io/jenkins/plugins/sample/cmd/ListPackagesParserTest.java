@@ -0,0 +1,70 @@
+package io.jenkins.plugins.sample.cmd;
+
+import io.jenkins.plugins.sample.cmd.model.SDKPackages;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ListPackagesParserTest {
+
+    private static final String INSTALLED = "[=======================================] 100% Computing updates...             \n"
+            + "Installed packages:\n"
+            + "  Path                                        | Version | Description                                | Location\n"
+            + "  -------                                     | ------- | -------                                    | -------\n"
+            + "  emulator                                    | 34.1.19 | Android Emulator                           | emulator\n"
+            + "  platform-tools                              | 35.0.1  | Android SDK Platform-Tools                 | platform-tools\n"
+            + "  system-images;android-34;google_apis;x86_64 | 13      | Google APIs Intel x86_64 Atom System Image | system-images/android-34/google_apis/x86_64\n"
+            + "\n";
+
+    private static final String AVAILABLE = "Available Packages:\n"
+            + "  Path                                        | Version | Description\n"
+            + "  -------                                     | ------- | -------\n"
+            + "  build-tools;34.0.0                          | 34.0.0  | Android SDK Build-Tools 34\n"
+            + "\n"
+            + "Available Updates:\n"
+            + "  ID                                          | Installed | Available\n"
+            + "  -------                                     | -------   | -------\n"
+            + "  emulator                                    | 34.1.19   | 34.2.13\n";
+
+    private static SDKPackages parse(SDKManagerCLIBuilder.ListPackagesParser parser, String output) {
+        for (String line : output.split("\n")) {
+            if (!parser.parseLine(line)) {
+                break;
+            }
+        }
+        return parser.getResult();
+    }
+
+    @Test
+    public void listInstalled() {
+        SDKPackages packages = parse(new SDKManagerCLIBuilder.ListPackagesParser(true), INSTALLED);
+
+        assertThat(packages.getInstalled()).extracting(SDKPackages.SDKPackage::getId)
+                .containsExactly("emulator", "platform-tools", "system-images;android-34;google_apis;x86_64");
+        assertThat(packages.getInstalled().get(0).getVersion().toString()).isEqualTo("34.1.19");
+        assertThat(packages.getInstalled().get(2).getVersion().getMajor()).isEqualTo(13);
+        assertThat(packages.getAvailable()).isEmpty();
+        assertThat(packages.getUpdates()).isEmpty();
+    }
+
+    @Test
+    public void installedOnlyStopsAtTheAvailablePackages() {
+        SDKManagerCLIBuilder.ListPackagesParser parser = new SDKManagerCLIBuilder.ListPackagesParser(true);
+
+        SDKPackages packages = parse(parser, INSTALLED + AVAILABLE);
+
+        assertThat(packages.getInstalled()).hasSize(3);
+        assertThat(packages.getAvailable()).isEmpty();
+        assertThat(parser.parseLine("Available Packages:")).isFalse();
+    }
+
+    @Test
+    public void listAll() {
+        SDKPackages packages = parse(new SDKManagerCLIBuilder.ListPackagesParser(), INSTALLED + AVAILABLE);
+
+        assertThat(packages.getInstalled()).hasSize(3);
+        assertThat(packages.getAvailable()).extracting(SDKPackages.SDKPackage::getId).containsExactly("build-tools;34.0.0");
+        assertThat(packages.getUpdates()).extracting(SDKPackages.SDKPackage::getId).containsExactly("emulator");
+        assertThat(packages.getUpdates().get(0).getVersion().toString()).isEqualTo("34.2.13");
+    }
+}
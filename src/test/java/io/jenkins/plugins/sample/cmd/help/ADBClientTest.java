@@ -0,0 +1,187 @@
+package io.jenkins.plugins.sample.cmd.help;
+
+import io.jenkins.plugins.sample.cmd.model.ADBDevice;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ADBClientTest {
+
+    private FakeServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void requestIsPrefixedByItsHexLength() {
+        assertThat(new String(ADBClient.encode("host:version"), StandardCharsets.UTF_8)).isEqualTo("000chost:version");
+        assertThat(new String(ADBClient.encode("host:transport:emulator-5554"), StandardCharsets.UTF_8))
+                .isEqualTo("001chost:transport:emulator-5554");
+    }
+
+    @Test
+    public void readStringReadsTheLengthThenThePayload() throws IOException {
+        InputStream is = stream("0005hello000aemulator-1");
+
+        assertThat(ADBClient.readString(is)).isEqualTo("hello");
+        assertThat(ADBClient.readString(is)).isEqualTo("emulator-1");
+    }
+
+    @Test
+    public void readStringRejectsAnInvalidLength() {
+        assertThatThrownBy(() -> ADBClient.readString(stream("zzzzhello"))).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void readStringFailsOnATruncatedPayload() {
+        assertThatThrownBy(() -> ADBClient.readString(stream("0010short"))).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void readStatusOnlyAcceptsOkayOrFail() throws IOException {
+        assertThat(ADBClient.readStatus(stream("OKAY"))).isEqualTo("OKAY");
+        assertThat(ADBClient.readStatus(stream("FAIL"))).isEqualTo("FAIL");
+        assertThatThrownBy(() -> ADBClient.readStatus(stream("WHAT"))).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void version() throws IOException {
+        server = new FakeServer().reply("host:version", "OKAY00040029");
+
+        assertThat(new ADBClient(server.getPort()).version()).isEqualTo(0x29);
+        assertThat(server.requests).containsExactly("host:version");
+    }
+
+    @Test
+    public void devices() throws IOException {
+        String payload = "emulator-5554          device product:sdk_gphone64_x86_64 model:sdk_gphone64_x86_64 transport_id:1\n"
+                + "emulator-5556          offline transport_id:2\n";
+        server = new FakeServer().reply("host:devices-l", "OKAY" + String.format("%04x", payload.length()) + payload);
+
+        List<ADBDevice> devices = new ADBClient(server.getPort()).devices();
+
+        assertThat(devices).extracting(ADBDevice::getEmulatorName).containsExactly("emulator-5554", "emulator-5556");
+        assertThat(devices.get(0).getModel()).isEqualTo("sdk_gphone64_x86_64");
+        assertThat(devices.get(1).getTransportId()).isEqualTo(2L);
+    }
+
+    @Test
+    public void getState() throws IOException {
+        server = new FakeServer()
+                .reply("host-serial:emulator-5554:get-state", "OKAY0006device")
+                .reply("host-serial:emulator-5556:get-state", "FAIL0010device not found");
+        ADBClient client = new ADBClient(server.getPort());
+
+        assertThat(client.getState("emulator-5554")).isEqualTo("device");
+        assertThat(client.getState("emulator-5556")).isNull();
+    }
+
+    @Test
+    public void shellReadsTheOutputUntilTheDeviceClosesTheStream() throws IOException {
+        server = new FakeServer()
+                .reply("host:transport:emulator-5554", "OKAY")
+                .reply("shell:getprop sys.boot_completed", "OKAY1\n");
+
+        assertThat(new ADBClient(server.getPort()).shell("emulator-5554", "getprop sys.boot_completed", 5000)).isEqualTo("1\n");
+        assertThat(server.requests).containsExactly("host:transport:emulator-5554", "shell:getprop sys.boot_completed");
+    }
+
+    @Test
+    public void failedRequestReportsTheServerMessage() throws IOException {
+        server = new FakeServer().reply("host:transport:emulator-5558", "FAIL0020device 'emulator-5558' not found");
+
+        assertThatThrownBy(() -> new ADBClient(server.getPort()).shell("emulator-5558", "ls", 5000))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("host:transport:emulator-5558")
+                .hasMessageContaining("not found");
+    }
+
+    @Test
+    public void unexpectedResponseIsAnError() throws IOException {
+        server = new FakeServer().reply("host:version", "HTTP/1.1 400");
+
+        assertThatThrownBy(() -> new ADBClient(server.getPort()).version()).isInstanceOf(IOException.class);
+    }
+
+    /**
+     * Answers each request with the given raw response, the connection is closed after a shell
+     * request or an unknown request, like the ADB server does.
+     */
+    private static final class FakeServer implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private final Map<String, String> replies = new ConcurrentHashMap<>();
+        final List<String> requests = new CopyOnWriteArrayList<>();
+
+        FakeServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread thread = new Thread(this::serve, "fake adb server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        FakeServer reply(String request, String response) {
+            replies.put(request, response);
+            return this;
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void serve() {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    DataInputStream is = new DataInputStream(socket.getInputStream());
+                    OutputStream os = socket.getOutputStream();
+                    while (true) {
+                        byte[] length = new byte[4];
+                        is.readFully(length);
+                        byte[] request = new byte[Integer.parseInt(new String(length, StandardCharsets.US_ASCII), 16)];
+                        is.readFully(request);
+                        String command = new String(request, StandardCharsets.UTF_8);
+                        requests.add(command);
+                        String response = replies.get(command);
+                        if (response != null) {
+                            os.write(response.getBytes(StandardCharsets.UTF_8));
+                            os.flush();
+                        }
+                        if (response == null || command.startsWith("shell:")) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    // the client closed the connection, or the server is closed
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
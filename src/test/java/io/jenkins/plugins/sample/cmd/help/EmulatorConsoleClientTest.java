@@ -0,0 +1,29 @@
+package io.jenkins.plugins.sample.cmd.help;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+public class EmulatorConsoleClientTest {
+
+    @Test
+    public void status() throws IOException {
+        assertThat(EmulatorConsoleClient.CommandTask.parseStatus("virtual device is running\n")).isEqualTo("running");
+        assertThat(EmulatorConsoleClient.CommandTask.parseStatus("virtual device is paused\n")).isEqualTo("paused");
+        assertThatThrownBy(() -> EmulatorConsoleClient.CommandTask.parseStatus("unknown command\n"))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void redirections() throws IOException {
+        assertThat(EmulatorConsoleClient.CommandTask.parseRedirections("tcp:5000  => 6000 \nudp:5001  => 6001 \n"))
+                .containsExactly(entry("tcp:5000", 6000), entry("udp:5001", 6001));
+        assertThat(EmulatorConsoleClient.CommandTask.parseRedirections("no active redirections\n")).isEmpty();
+        assertThatThrownBy(() -> EmulatorConsoleClient.CommandTask.parseRedirections("tcp:5000\n"))
+                .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,70 @@
+package io.jenkins.plugins.sample.cmd.help;
+
+import io.jenkins.plugins.sample.EmulatorCrashException.Reason;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmulatorCrashDetectorTest {
+
+    private static EmulatorCrashDetector output(String... lines) throws IOException {
+        EmulatorCrashDetector detector = new EmulatorCrashDetector(new ByteArrayOutputStream());
+        for (String line : lines) {
+            detector.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        detector.close();
+        return detector;
+    }
+
+    @Test
+    public void fatalMessages() {
+        assertThat(EmulatorCrashDetector.classify("emulator: ERROR: x86_64 emulation currently requires hardware acceleration!"))
+                .isEqualTo(Reason.NO_KVM);
+        assertThat(EmulatorCrashDetector.classify("CPU acceleration status: /dev/kvm is not found.")).isEqualTo(Reason.NO_KVM);
+        assertThat(EmulatorCrashDetector.classify("/opt/android-sdk/emulator/qemu/linux-x86_64/qemu-system-x86_64: "
+                + "error while loading shared libraries: libpulse.so.0: cannot open shared object file: No such file or directory"))
+                .isEqualTo(Reason.MISSING_LIB);
+        assertThat(EmulatorCrashDetector.classify("PANIC: Unknown AVD name [test], use -list-avds to see valid list."))
+                .isEqualTo(Reason.AVD_CORRUPT);
+        assertThat(EmulatorCrashDetector.classify("PANIC: Broken AVD system path. Check your ANDROID_SDK_ROOT value [/opt/android-sdk]!"))
+                .isEqualTo(Reason.AVD_CORRUPT);
+        assertThat(EmulatorCrashDetector.classify("qemu-system-x86_64: cannot set up guest memory 'android_x86.ram': Cannot allocate memory"))
+                .isEqualTo(Reason.OUT_OF_MEMORY);
+        assertThat(EmulatorCrashDetector.classify("FATAL   | Not enough memory to run the emulator")).isEqualTo(Reason.OUT_OF_MEMORY);
+    }
+
+    @Test
+    public void warningsAreNotFatal() {
+        assertThat(EmulatorCrashDetector.classify("CPU acceleration status: KVM (version 12) is installed and usable.")).isNull();
+        assertThat(EmulatorCrashDetector.classify("emulator: WARNING: /dev/kvm is not accessible by the current user, using TCG")).isNull();
+        assertThat(EmulatorCrashDetector.classify("WARNING | cache.img is corrupt, recreating it")).isNull();
+        assertThat(EmulatorCrashDetector.classify("emulator: WARNING: failed to allocate the GPU buffer, falling back to software")).isNull();
+        assertThat(EmulatorCrashDetector.classify("INFO    | Checking system compatibility:")).isNull();
+    }
+
+    @Test
+    public void lastFatalMessageWins() throws IOException {
+        EmulatorCrashDetector detector = output(
+                "PANIC: Unknown AVD name [old], use -list-avds to see valid list.",
+                "INFO    | Android emulator version 31.3.10.0",
+                "qemu-system-x86_64: cannot set up guest memory 'android_x86.ram': Cannot allocate memory",
+                "INFO    | Shutting down");
+
+        assertThat(detector.findEvidence()).startsWith("qemu-system-x86_64: cannot set up guest memory");
+    }
+
+    @Test
+    public void onlyTheLastLinesAreKept() throws IOException {
+        String[] lines = new String[100];
+        lines[0] = "PANIC: Unknown AVD name [test], use -list-avds to see valid list.";
+        for (int i = 1; i < lines.length; i++) {
+            lines[i] = "INFO    | line " + i;
+        }
+
+        assertThat(output(lines).findEvidence()).isNull();
+    }
+}
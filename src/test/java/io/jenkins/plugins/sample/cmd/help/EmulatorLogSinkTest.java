@@ -0,0 +1,138 @@
+package io.jenkins.plugins.sample.cmd.help;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmulatorLogSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(EmulatorLogSink.Ring ring, String content) throws IOException {
+        ring.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String tail(EmulatorLogSink.Ring ring) {
+        return new String(ring.getTail(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void keepsEverythingUntilFull() throws IOException {
+        EmulatorLogSink.Ring ring = new EmulatorLogSink.Ring(16, 8, new ByteArrayOutputStream());
+        write(ring, "abc\ndef\n");
+
+        assertThat(tail(ring)).isEqualTo("abc\ndef\n");
+        assertThat(ring.getDropped()).isZero();
+    }
+
+    @Test
+    public void wrapsAround() throws IOException {
+        EmulatorLogSink.Ring ring = new EmulatorLogSink.Ring(16, 8, new ByteArrayOutputStream());
+        write(ring, "0123456\n");
+        write(ring, "abcdefg\n");
+        write(ring, "ABCDEFG\n");
+
+        // the oldest line is dropped first
+        assertThat(tail(ring)).isEqualTo("abcdefg\nABCDEFG\n");
+        assertThat(ring.getDropped()).isEqualTo(8);
+
+        write(ring, "xyz\n");
+        assertThat(tail(ring)).isEqualTo("efg\nABCDEFG\nxyz\n");
+        assertThat(ring.getDropped()).isEqualTo(12);
+    }
+
+    @Test
+    public void keepsTheEndOfALongLine() throws IOException {
+        EmulatorLogSink.Ring ring = new EmulatorLogSink.Ring(8, 8, new ByteArrayOutputStream());
+        write(ring, "ab\n");
+        write(ring, "0123456789\n");
+
+        assertThat(tail(ring)).isEqualTo("3456789\n");
+        assertThat(ring.getDropped()).isEqualTo(3);
+    }
+
+    @Test
+    public void archivesTheTail() throws IOException {
+        EmulatorLogSink.Ring ring = new EmulatorLogSink.Ring(16, 8, new ByteArrayOutputStream());
+        write(ring, "0123456\n");
+        write(ring, "abcdefg\n");
+        // not a complete line yet
+        write(ring, "ABCDEFG");
+
+        File archive = new File(folder.getRoot(), "emulator-5554.log.gz");
+        assertThat(ring.archive(archive.getPath())).isTrue();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(archive.toPath()))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+                    .isEqualTo("[7 bytes of earlier output dropped]\n\nabcdefg\nABCDEFG");
+        }
+    }
+
+    @Test
+    public void nothingToArchive() throws IOException {
+        EmulatorLogSink.Ring ring = new EmulatorLogSink.Ring(16, 8, new ByteArrayOutputStream());
+
+        assertThat(ring.archive(new File(folder.getRoot(), "emulator-5554.log.gz").getPath())).isFalse();
+    }
+
+    @Test
+    public void consoleStopsOnDetach() throws Exception {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        EmulatorLogSink.Ring ring = new EmulatorLogSink.Ring(64, 8, console);
+        write(ring, "booting\n");
+        ring.detach();
+        write(ring, "booted\n");
+
+        // the line received before detach still reaches the console
+        for (int i = 0; i < 50 && console.size() == 0; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(console.toString(StandardCharsets.UTF_8.name())).isEqualTo("booting\n");
+        assertThat(tail(ring)).isEqualTo("booting\nbooted\n");
+    }
+
+    @Test(timeout = 10000)
+    public void neverWaitsForTheConsole() throws IOException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        EmulatorLogSink.Ring ring = new EmulatorLogSink.Ring(64, 1, new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            write(ring, "line " + i + "\n");
+        }
+        blocked.countDown();
+
+        assertThat(tail(ring)).endsWith("line 99\n");
+    }
+
+    @Test
+    public void findsTheEvidenceInTheTail() throws IOException {
+        EmulatorLogSink.Ring ring = new EmulatorLogSink.Ring(1024, 8, new ByteArrayOutputStream());
+        write(ring, "INFO    | Android emulator version 31.3.10.0\n");
+        write(ring, "PANIC: Unknown AVD name [test], use -list-avds to see valid list.\n");
+        ring.detach();
+        // the emulator exited before the end of its last line
+        write(ring, "qemu-system-x86_64: cannot set up guest memory 'android_x86.ram': Cannot allocate memory");
+
+        assertThat(ring.findEvidence()).startsWith("qemu-system-x86_64: cannot set up guest memory");
+    }
+}
@@ -0,0 +1,97 @@
+package io.jenkins.plugins.sample.sdk;
+
+import hudson.FilePath;
+import hudson.util.io.ArchiverFactory;
+import io.jenkins.plugins.sample.cmd.model.Version;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SDKArchiveCacheTest {
+
+    private static final String ID = "platforms;android-30";
+    private static final Version VERSION = new Version(3, 0, 0, null);
+    private static final String PACKAGE_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<ns2:repository xmlns:ns2=\"http://schemas.android.com/repository/android/common/01\">"
+            + "<localPackage path=\"platforms;android-30\" obsolete=\"false\">"
+            + "<revision><major>3</major></revision><display-name>Android SDK Platform 30</display-name>"
+            + "</localPackage></ns2:repository>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameFilesAsThePublishedArchive() throws Exception {
+        File published = zip("android-11/android.jar", "jar", "android-11/data/fonts.xml", "fonts");
+        File archive = tarGz("android.jar", "jar", "data/fonts.xml", "fonts", "package.xml", PACKAGE_XML);
+
+        assertThat(SDKArchiveCache.matches(published, archive, ID, VERSION)).isTrue();
+    }
+
+    @Test
+    public void modifiedFile() throws Exception {
+        File published = zip("android-11/android.jar", "jar", "android-11/data/fonts.xml", "fonts");
+        File archive = tarGz("android.jar", "jar", "data/fonts.xml", "evil", "package.xml", PACKAGE_XML);
+
+        assertThat(SDKArchiveCache.matches(published, archive, ID, VERSION)).isFalse();
+    }
+
+    @Test
+    public void extraOrMissingFile() throws Exception {
+        File published = zip("android-11/android.jar", "jar", "android-11/data/fonts.xml", "fonts");
+
+        assertThat(SDKArchiveCache.matches(published,
+                tarGz("android.jar", "jar", "data/fonts.xml", "fonts", "data/evil.so", "evil", "package.xml", PACKAGE_XML),
+                ID, VERSION)).isFalse();
+        assertThat(SDKArchiveCache.matches(published, tarGz("android.jar", "jar", "package.xml", PACKAGE_XML), ID, VERSION))
+                .isFalse();
+    }
+
+    @Test
+    public void descriptorOfAnotherPackage() throws Exception {
+        File published = zip("android-11/android.jar", "jar");
+
+        assertThat(SDKArchiveCache.matches(published, tarGz("android.jar", "jar", "package.xml", PACKAGE_XML),
+                ID, new Version(2, 0, 0, null))).isFalse();
+        assertThat(SDKArchiveCache.matches(published, tarGz("android.jar", "jar", "package.xml", "<repository/>"),
+                ID, VERSION)).isFalse();
+    }
+
+    // the name and content of each entry
+    private File zip(String... entries) throws IOException {
+        File zip = folder.newFile();
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip.toPath()))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+    // archived the way the cache archives a package folder on an agent
+    private File tarGz(String... files) throws Exception {
+        File root = folder.newFolder();
+        for (int i = 0; i < files.length; i += 2) {
+            File file = new File(root, files[i]);
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), files[i + 1].getBytes(StandardCharsets.UTF_8));
+        }
+        File archive = folder.newFile();
+        try (OutputStream out = Files.newOutputStream(archive.toPath())) {
+            new FilePath(root).archive(ArchiverFactory.TARGZ, out, "**");
+        }
+        return archive;
+    }
+}
@@ -0,0 +1,60 @@
+package io.jenkins.plugins.sample.sdk;
+
+import io.jenkins.plugins.sample.cmd.help.Platform;
+import io.jenkins.plugins.sample.cmd.model.Version;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SDKRepositoryTest {
+
+    private static final String MANIFEST = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<sdk:sdk-repository xmlns:sdk=\"http://schemas.android.com/sdk/android/repo/repository2/01\">"
+            + "<remotePackage path=\"platform-tools\">"
+            + "<revision><major>33</major><minor>0</minor><micro>3</micro></revision>"
+            + "<archives>"
+            + "<archive><complete><size>1</size><checksum>aaaa</checksum><url>platform-tools_r33.0.3-darwin.zip</url></complete>"
+            + "<host-os>macosx</host-os></archive>"
+            + "<archive><complete><size>1</size><checksum type=\"sha1\">bbbb</checksum><url>platform-tools_r33.0.3-linux.zip</url></complete>"
+            + "<host-os>linux</host-os></archive>"
+            + "</archives></remotePackage>"
+            + "<remotePackage path=\"platforms;android-30\">"
+            + "<revision><major>3</major></revision>"
+            + "<archives><archive><complete><size>1</size><checksum>cccc</checksum><url>https://mirror/platform-30_r03.zip</url></complete>"
+            + "</archive></archives></remotePackage>"
+            + "</sdk:sdk-repository>";
+
+    @Test
+    public void archiveOfTheHostOS() throws Exception {
+        Map<String, List<SDKRepository.Archive>> archives = parse();
+
+        SDKRepository.Archive archive = SDKRepository.select(archives.get("platform-tools@33.0.3"), Platform.LINUX);
+        assertThat(archive.url).hasToString("https://dl.google.com/android/repository/platform-tools_r33.0.3-linux.zip");
+        assertThat(archive.sha1).isEqualTo("bbbb");
+        assertThat(SDKRepository.select(archives.get("platform-tools@33.0.3"), Platform.OSX).sha1).isEqualTo("aaaa");
+        assertThat(SDKRepository.select(archives.get("platform-tools@33.0.3"), Platform.WINDOWS)).isNull();
+    }
+
+    @Test
+    public void archiveOfAnyHostOS() throws Exception {
+        Map<String, List<SDKRepository.Archive>> archives = parse();
+
+        SDKRepository.Archive archive = SDKRepository.select(archives.get("platforms;android-30@" + new Version(3, 0, 0, null)),
+                Platform.WINDOWS);
+        assertThat(archive.url).hasToString("https://mirror/platform-30_r03.zip");
+        assertThat(archive.sha1).isEqualTo("cccc");
+        assertThat(archives.get("platforms;android-30@2.0.0")).isNull();
+    }
+
+    private static Map<String, List<SDKRepository.Archive>> parse() throws Exception {
+        return SDKRepository.parse(InstalledPackagesTask.newDocumentBuilder()
+                        .parse(new ByteArrayInputStream(MANIFEST.getBytes(StandardCharsets.UTF_8))),
+                new URL("https://dl.google.com/android/repository/repository2-1.xml"));
+    }
+}